@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+// Венгерский алгоритм (задача о назначениях) для прямоугольной матрицы стоимостей rows <= cols:
+// каждой строке (вызову) достаётся свой столбец (место в лифте) с минимальной суммарной стоимостью
+public final class AssignmentSolver {
+    private AssignmentSolver() {
+    }
+
+    // Возвращает для каждой строки номер назначенного столбца
+    public static int[] solve(long[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) return new int[0];
+        int cols = cost[0].length;
+        if (rows > cols) {
+            throw new IllegalArgumentException("Строк больше, чем столбцов: " + rows + " > " + cols);
+        }
+
+        // Потенциалы u (строки) и v (столбцы), индексация с 1; p[j] - строка, занявшая столбец j
+        long[] u = new long[rows + 1];
+        long[] v = new long[cols + 1];
+        int[] p = new int[cols + 1];
+        int[] way = new int[cols + 1];
+        long[] minv = new long[cols + 1];
+        boolean[] used = new boolean[cols + 1];
+
+        for (int i = 1; i <= rows; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= cols; j++) {
+                    if (used[j]) continue;
+                    long cur = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] assignment = new int[rows];
+        for (int j = 1; j <= cols; j++) {
+            if (p[j] != 0) {
+                assignment[p[j] - 1] = j - 1;
+            }
+        }
+        return assignment;
+    }
+}
@@ -1,4 +1,93 @@
+import java.util.*;
+
 public class BuildingConfig {
     public static final int FLOORS = 20;
     public static final int ELEVATORS_COUNT = 4;
-}
\ No newline at end of file
+
+    private final String name;
+    private final int floors;
+    private final int elevatorsCount;
+    private final List<ElevatorGroup> groups;
+    private final ElevatorGroup[] groupByCar;
+
+    // Без зонирования: все лифты обслуживают все этажи
+    public BuildingConfig(String name, int floors, int elevatorsCount) {
+        this(name, floors, singleGroup(name, floors, elevatorsCount));
+    }
+    
+    private static List<ElevatorGroup> singleGroup(String name, int floors, int elevatorsCount) {
+        if (floors < 2 || floors > Request.MAX_FLOOR || elevatorsCount < 1) {
+            throw new IllegalArgumentException("Некорректное здание " + name + ": этажей " + floors + ", лифтов " + elevatorsCount);
+        }
+        return Collections.singletonList(ElevatorGroup.zone("все этажи", elevatorsCount, 1, floors));
+    }
+
+    // Зонированное здание: лифты нумеруются подряд по группам
+    public BuildingConfig(String name, int floors, List<ElevatorGroup> groups) {
+        int cars = 0;
+        for (ElevatorGroup group : groups) {
+            if (group.getLowestFloor() < 1 || group.getHighestFloor() > floors) {
+                throw new IllegalArgumentException("Группа " + group.getName() + " выходит за этажи здания " + name);
+            }
+            cars += group.getCarCount();
+        }
+        if (floors < 2 || floors > Request.MAX_FLOOR || cars < 1) {
+            throw new IllegalArgumentException("Некорректное здание " + name + ": этажей " + floors + ", лифтов " + cars);
+        }
+        this.name = name;
+        this.floors = floors;
+        this.elevatorsCount = cars;
+        this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+        this.groupByCar = new ElevatorGroup[cars];
+        int car = 0;
+        for (ElevatorGroup group : groups) {
+            for (int i = 0; i < group.getCarCount(); i++) {
+                groupByCar[car++] = group;
+            }
+        }
+    }
+
+    // Здание по умолчанию для GUI и консольного режима
+    public static BuildingConfig defaultBuilding() {
+        return new BuildingConfig("building", FLOORS, ELEVATORS_COUNT);
+    }
+
+    // Высотка со скай-лобби посередине: нижняя зона от лобби до скай-лобби,
+    // экспресс-челноки лобби <-> скай-лобби и верхняя зона от скай-лобби до крыши
+    public static BuildingConfig skyLobbyTower(String name, int floors, int carsPerGroup) {
+        int skyLobby = floors / 2;
+        return new BuildingConfig(name, floors, Arrays.asList(
+                ElevatorGroup.zone("нижняя зона", carsPerGroup, 1, skyLobby),
+                ElevatorGroup.express("экспресс", carsPerGroup, 1, skyLobby),
+                ElevatorGroup.zone("верхняя зона", carsPerGroup, skyLobby, floors)));
+    }
+
+    public String getName() { return name; }
+    public int getFloors() { return floors; }
+    public int getElevatorsCount() { return elevatorsCount; }
+    public List<ElevatorGroup> getGroups() { return groups; }
+
+    public ElevatorGroup getGroupOfCar(int carIndex) {
+        return groupByCar[carIndex];
+    }
+
+    public boolean isDirectlyServed(int from, int to) {
+        for (ElevatorGroup group : groups) {
+            if (group.serves(from) && group.serves(to)) return true;
+        }
+        return false;
+    }
+
+    // Этаж пересадки (скай-лобби) между группами, обслуживающими from и to; -1 - пересадка не нужна или невозможна
+    public int findTransferFloor(int from, int to) {
+        if (isDirectlyServed(from, to)) return -1;
+        int best = -1;
+        for (int floor = 1; floor <= floors; floor++) {
+            if (isDirectlyServed(from, floor) && isDirectlyServed(floor, to)
+                    && (best == -1 || Math.abs(floor - from) < Math.abs(best - from))) {
+                best = floor;
+            }
+        }
+        return best;
+    }
+}
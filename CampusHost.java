@@ -0,0 +1,121 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Несколько независимых зданий (шардов) в одной JVM. У каждого здания свои конфигурация,
+// диспетчер, очереди и метрики; здание целиком закреплено за одним однопоточным планировщиком,
+// поэтому между зданиями нет общих блокировок, а здания распределяются по ядрам.
+// Маршрутизатор - неизменяемая таблица имя -> здание, читается без синхронизации
+public class CampusHost {
+    private final Map<String, ElevatorSystem> shards;
+    private final List<ScheduledExecutorService> workers;
+    private final AtomicLong unroutedCalls;
+
+    public CampusHost(List<BuildingConfig> buildings, int workerCount) {
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            String threadName = "Campus-" + i;
+            workers.add(Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+
+        Map<String, ElevatorSystem> systems = new LinkedHashMap<>();
+        int index = 0;
+        for (BuildingConfig config : buildings) {
+            if (systems.containsKey(config.getName())) {
+                throw new IllegalArgumentException("Повторное имя здания: " + config.getName());
+            }
+            ElevatorSystem system = new ElevatorSystem(config, new SystemClock());
+            system.setSharedScheduler(workers.get(index++ % workerCount));
+            systems.put(config.getName(), system);
+        }
+        this.shards = Collections.unmodifiableMap(systems);
+        this.unroutedCalls = new AtomicLong();
+    }
+
+    public void start() {
+        for (ElevatorSystem system : shards.values()) {
+            system.start();
+        }
+    }
+
+    public void stop() {
+        for (ElevatorSystem system : shards.values()) {
+            system.stop();
+        }
+        for (ScheduledExecutorService worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    // Вызов с этажа в нужное здание; false - здание не найдено
+    public boolean routeExternal(String building, int floor, Direction direction) {
+        ElevatorSystem system = shards.get(building);
+        if (system == null) {
+            unroutedCalls.incrementAndGet();
+            return false;
+        }
+        system.getDispatcher().addExternalRequest(floor, direction);
+        return true;
+    }
+
+    public boolean routeInternal(String building, int floor, int elevatorId) {
+        ElevatorSystem system = shards.get(building);
+        if (system == null) {
+            unroutedCalls.incrementAndGet();
+            return false;
+        }
+        system.getDispatcher().addInternalRequest(floor, elevatorId);
+        return true;
+    }
+
+    public ElevatorSystem getShard(String building) {
+        return shards.get(building);
+    }
+
+    public Collection<ElevatorSystem> getShards() {
+        return shards.values();
+    }
+
+    public long getUnroutedCalls() {
+        return unroutedCalls.get();
+    }
+
+    // Демонстрация: java CampusHost [зданий] [секунд]
+    public static void main(String[] args) throws InterruptedException {
+        int buildingsCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        List<BuildingConfig> buildings = new ArrayList<>();
+        for (int i = 0; i < buildingsCount; i++) {
+            buildings.add(new BuildingConfig("tower-" + i, BuildingConfig.FLOORS, BuildingConfig.ELEVATORS_COUNT));
+        }
+        CampusHost campus = new CampusHost(buildings, Math.min(cores, buildingsCount));
+        for (ElevatorSystem system : campus.getShards()) {
+            system.getLogPipeline().setMinLevel(LogLevel.WARN);
+        }
+        campus.start();
+
+        Random random = new Random();
+        long deadline = System.currentTimeMillis() + seconds * 1000L;
+        long calls = 0;
+        while (System.currentTimeMillis() < deadline) {
+            BuildingConfig building = buildings.get(random.nextInt(buildingsCount));
+            int floor = random.nextInt(building.getFloors() - 1) + 1;
+            campus.routeExternal(building.getName(), floor, Direction.UP);
+            calls++;
+            Thread.sleep(10);
+        }
+        campus.stop();
+
+        System.out.println("Зданий: " + buildingsCount + ", рабочих потоков: " + Math.min(cores, buildingsCount)
+                + ", вызовов: " + calls);
+        for (ElevatorSystem system : campus.getShards()) {
+            System.out.println(system.getConfig().getName() + ": " + system.getMetrics().getWaitTimes().summary("мс"));
+        }
+    }
+}
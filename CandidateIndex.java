@@ -0,0 +1,112 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Индекс лифтов для большого парка: корзины (полоса этажей x стоит / едет вверх / едет вниз),
+// в каждой корзине битовая карта номеров лифтов. Лифт перекладывается между корзинами при публикации
+// снимка (CAS по словам битовой карты, без блокировок), поэтому диспетчер оценивает не весь парк,
+// а несколько ближайших стоящих лифтов и лифты, идущие к вызову в его направлении.
+// Во время перекладки лифт может ненадолго пропасть из индекса - тогда его просто не оценят в этот раз
+public class CandidateIndex {
+    public static final int BAND_FLOORS = 5;
+    // Столько кандидатов каждой категории достаточно, дальше поиск по полосам не расширяется
+    public static final int CANDIDATES_PER_KIND = 8;
+
+    private static final int STANDING = 0;
+    private static final int UP = 1;
+    private static final int DOWN = 2;
+    private static final int KINDS = 3;
+
+    private final int bands;
+    private final int words;
+    private final AtomicLongArray bits;
+    private final AtomicIntegerArray bucketOfCar;
+
+    public CandidateIndex(int floors, int cars) {
+        this.bands = (floors - 1) / BAND_FLOORS + 1;
+        this.words = (cars + 63) / 64;
+        this.bits = new AtomicLongArray(bands * KINDS * words);
+        this.bucketOfCar = new AtomicIntegerArray(cars);
+        for (int i = 0; i < cars; i++) {
+            bucketOfCar.set(i, -1);
+        }
+    }
+
+    private int band(int floor) {
+        return Math.min(bands - 1, Math.max(0, (floor - 1) / BAND_FLOORS));
+    }
+
+    private static int kind(ElevatorSnapshot snapshot) {
+        if (snapshot.getDirection() == Direction.UP) return UP;
+        if (snapshot.getDirection() == Direction.DOWN) return DOWN;
+        return STANDING;
+    }
+
+    // Вызывается лифтом при публикации снимка под его lock, поэтому обновления одного лифта не пересекаются
+    public void update(ElevatorSnapshot snapshot) {
+        int car = snapshot.getElevatorId();
+        if (car < 0 || car >= bucketOfCar.length()) return;
+        int bucket = band(snapshot.getCurrentFloor()) * KINDS + kind(snapshot);
+        int previous = bucketOfCar.getAndSet(car, bucket);
+        if (previous == bucket) return;
+        if (previous >= 0) {
+            clearBit(previous, car);
+        }
+        setBit(bucket, car);
+    }
+
+    private void setBit(int bucket, int car) {
+        int index = bucket * words + (car >>> 6);
+        long mask = 1L << (car & 63);
+        long word;
+        do {
+            word = bits.get(index);
+        } while (!bits.compareAndSet(index, word, word | mask));
+    }
+
+    private void clearBit(int bucket, int car) {
+        int index = bucket * words + (car >>> 6);
+        long mask = 1L << (car & 63);
+        long word;
+        do {
+            word = bits.get(index);
+        } while (!bits.compareAndSet(index, word, word & ~mask));
+    }
+
+    // Кандидаты для вызова с этажа: стоящие лифты в ближайших полосах (кольцами от полосы вызова)
+    // и лифты, идущие в направлении вызова со стороны, откуда к нему подъезжают.
+    // Битовая карта номеров лифтов пишется в переданный массив (не меньше words слов) - без аллокации на каждый вызов
+    public void candidates(int floor, Direction direction, long[] result) {
+        Arrays.fill(result, 0, words, 0);
+        int home = band(floor);
+
+        int found = 0;
+        for (int radius = 0; radius < bands && found < CANDIDATES_PER_KIND; radius++) {
+            found += collect(home - radius, STANDING, result);
+            if (radius > 0) {
+                found += collect(home + radius, STANDING, result);
+            }
+        }
+
+        if (direction == Direction.UP || direction == Direction.DOWN) {
+            int kind = direction == Direction.UP ? UP : DOWN;
+            int step = direction == Direction.UP ? -1 : 1;
+            found = 0;
+            for (int band = home; band >= 0 && band < bands && found < CANDIDATES_PER_KIND; band += step) {
+                found += collect(band, kind, result);
+            }
+        }
+    }
+
+    private int collect(int band, int kind, long[] result) {
+        if (band < 0 || band >= bands) return 0;
+        int base = (band * KINDS + kind) * words;
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            long word = bits.get(base + w);
+            result[w] |= word;
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
\ No newline at end of file
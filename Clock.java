@@ -0,0 +1,4 @@
+// Источник времени для лифтов и диспетчера: реальное или виртуальное (симуляция)
+public interface Clock {
+    long now();
+}
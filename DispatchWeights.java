@@ -0,0 +1,36 @@
+// Веса оценки лифта диспетчером - надбавки к времени прибытия (EtaModel), в мс.
+// Подбираются по данным: ScenarioRunner прогоняет сетку весов на смесях трафика (Dispatcher.setWeights)
+public class DispatchWeights {
+    public static final DispatchWeights DEFAULT = new DispatchWeights(
+            (int) Elevator.FLOOR_TRAVEL_MS, 60_000, (int) EtaModel.DOOR_CYCLE_MS, EtaModel.DOOR_CYCLE_MS);
+
+    // Пассажир в кабине или ждущий посадки - как этаж пути: посадка и выход удлиняют остановки
+    private final int passengerCost;
+    // Полный лифт не остановится, пока не высадит пассажиров
+    private final int fullCarCost;
+    // Новая остановка ради пассажира режима выбора этажа
+    private final int destinationStopCost;
+    // Каждый следующий вызов того же пакета, назначенный одному лифту, - лишняя остановка
+    private final long batchExtraStopCost;
+
+    public DispatchWeights(int passengerCost, int fullCarCost, int destinationStopCost, long batchExtraStopCost) {
+        if (passengerCost < 0 || fullCarCost < 0 || destinationStopCost < 0 || batchExtraStopCost < 0) {
+            throw new IllegalArgumentException("Веса диспетчера не могут быть отрицательными");
+        }
+        this.passengerCost = passengerCost;
+        this.fullCarCost = fullCarCost;
+        this.destinationStopCost = destinationStopCost;
+        this.batchExtraStopCost = batchExtraStopCost;
+    }
+
+    public int getPassengerCost() { return passengerCost; }
+    public int getFullCarCost() { return fullCarCost; }
+    public int getDestinationStopCost() { return destinationStopCost; }
+    public long getBatchExtraStopCost() { return batchExtraStopCost; }
+
+    @Override
+    public String toString() {
+        return "пассажир=" + passengerCost + " полный=" + fullCarCost
+                + " остановка=" + destinationStopCost + " пакет=" + batchExtraStopCost;
+    }
+}
\ No newline at end of file
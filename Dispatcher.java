@@ -1,202 +1,822 @@
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 public class Dispatcher {
+    public static final long BATCH_WINDOW_MS = 50;
+    // Период фоновой работы диспетчера (переназначение вызовов, предварительная парковка)
+    public static final long TICK_MS = 5000;
+    // Вызов переходит к другому лифту, только если тот приедет раньше хотя бы на столько
+    public static final int REASSIGN_MARGIN_MS = 5000;
+    // До стольких лифтов на этаже полный перебор дешевле индекса кандидатов
+    private static final int SMALL_FLEET = 16;
+    // Оценки - в миллисекундах до прибытия лифта (EtaModel) плюс надбавки из DispatchWeights, тоже в мс.
+    // Стоимость назначения лифту, который не обслуживает этаж вызова
+    private static final long INELIGIBLE_COST = 1_000_000_000L;
+    
     private final List<Elevator> elevators;
-    private final BlockingQueue<Request> externalRequests;
+    // Лифты, останавливающиеся на этаже (индекс - номер этажа); считается один раз по зонам групп
+    private final Elevator[][] eligibleByFloor;
+    private final CandidateIndex candidateIndex;
+    private final EtaModel etaModel;
+    // Новые вызовы с этажей, упакованные в long (Request.pack); разбирает один поток за раз.
+    // Вызов попадает сюда только после регистрации в hallCalls, поэтому больше двух на этаж не бывает
+    private final MpscLongRing externalRequests;
+    private final MpscLongRing.Consumer assigner;
+    private final MpscLongRing.Consumer batchCollector;
+    private final long[] batch;
+    private int batchSize;
+    // Битовая карта кандидатов для selectBest; ею пользуется только поток, разбирающий очередь
+    private final long[] candidates;
+    private final Runnable drainTask;
+    private final HallCallIndex hallCalls;
+    private final TrafficPredictor predictor;
+    private volatile DispatchWeights weights;
+    private volatile boolean parkingEnabled;
+    private volatile boolean reassignEnabled;
+    private volatile OverflowPolicy overflowPolicy;
+    // Отклонённые вызовы по причинам (индекс - RejectReason.ordinal) и вызовы, слитые при переполнении
+    private final AtomicLongArray rejections;
+    private final AtomicLong coalescedCalls;
+    private final AtomicLong reassignedCalls;
+    private final Clock clock;
+    private final BuildingConfig config;
+    private volatile HallCallListener hallCallListener;
     private volatile boolean running;
+    private volatile boolean batchMode;
+    private volatile Thread dispatcherThread;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> tickTask;
+    private final AtomicBoolean drainScheduled;
     private ElevatorSystem system;
     
     public Dispatcher(List<Elevator> elevators) {
+        this(elevators, BuildingConfig.defaultBuilding());
+    }
+    
+    public Dispatcher(List<Elevator> elevators, BuildingConfig config) {
         this.elevators = new ArrayList<>(elevators);
-        this.externalRequests = new LinkedBlockingQueue<>();
+        this.config = config;
+        this.externalRequests = new MpscLongRing(2 * (config.getFloors() + 1));
+        this.assigner = (packed, enqueuedAt) -> assignRequest(packed);
+        this.batch = new long[externalRequests.capacity()];
+        this.batchCollector = (packed, enqueuedAt) -> batch[batchSize++] = packed;
+        this.candidates = new long[(this.elevators.size() + 63) / 64];
+        this.drainTask = this::drainScheduledRequests;
+        this.drainScheduled = new AtomicBoolean();
+        this.hallCalls = new HallCallIndex(config.getFloors());
+        this.eligibleByFloor = buildEligibility(this.elevators, config.getFloors());
+        this.candidateIndex = new CandidateIndex(config.getFloors(), this.elevators.size());
+        this.etaModel = new EtaModel(this.elevators.size());
+        for (Elevator elevator : this.elevators) {
+            elevator.setSnapshotListener(candidateIndex::update);
+        }
         this.running = true;
+        this.batchMode = Boolean.getBoolean("elevator.batch");
         if (!elevators.isEmpty()) {
             this.system = elevators.get(0).getSystem();
         }
+        this.clock = system != null ? system.getClock() : new SystemClock();
+        // Реальные часы считают от UTC, интервалы суток - по местному времени; симуляция начинается с полуночи
+        long dayOffset = clock instanceof SystemClock ? TimeZone.getDefault().getOffset(clock.now()) : 0;
+        this.predictor = new TrafficPredictor(config.getFloors(), dayOffset);
+        this.weights = DispatchWeights.DEFAULT;
+        this.parkingEnabled = Boolean.parseBoolean(System.getProperty("elevator.parking", "true"));
+        this.overflowPolicy = parseOverflowPolicy(System.getProperty("elevator.overflow", "COALESCE"));
+        this.rejections = new AtomicLongArray(RejectReason.values().length);
+        this.coalescedCalls = new AtomicLong();
+        this.reassignedCalls = new AtomicLong();
+        this.reassignEnabled = Boolean.parseBoolean(System.getProperty("elevator.reassign", "true"));
+    }
+    
+    // Опечатка в -Delevator.overflow не роняет запуск: политика по умолчанию и предупреждение
+    private OverflowPolicy parseOverflowPolicy(String value) {
+        try {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log(LogLevel.WARN, "Неизвестная политика переполнения " + value + ", используется COALESCE");
+            return OverflowPolicy.COALESCE;
+        }
+    }
+    
+    private static Elevator[][] buildEligibility(List<Elevator> elevators, int floors) {
+        Elevator[][] eligible = new Elevator[floors + 1][];
+        for (int floor = 1; floor <= floors; floor++) {
+            List<Elevator> serving = new ArrayList<>();
+            for (Elevator elevator : elevators) {
+                if (elevator.serves(floor)) serving.add(elevator);
+            }
+            eligible[floor] = serving.toArray(new Elevator[0]);
+        }
+        return eligible;
     }
     
     public void start() {
-        Thread dispatcherThread = new Thread(this::dispatchLoop, "Dispatcher");
+        dispatcherThread = new Thread(this::dispatchLoop, "Dispatcher");
         dispatcherThread.start();
     }
     
-    // Основной цикл диспетчера для обработки запросов из очереди
+    // Исполнение на общем планировщике без своего потока: новый вызов ставит одну задачу разбора очереди
+    public void start(ScheduledExecutorService executor) {
+        this.executor = executor;
+        this.tickTask = executor.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        log(LogLevel.INFO, "Диспетчер запущен на общем планировщике");
+        if (!externalRequests.isEmpty()) {
+            signalDispatch();
+        }
+    }
+    
+    // Свой поток будится из LockSupport.park, на общем планировщике ставится одна задача разбора
+    private void signalDispatch() {
+        Thread thread = dispatcherThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            return;
+        }
+        ScheduledExecutorService current = executor;
+        if (current == null || !running || !drainScheduled.compareAndSet(false, true)) return;
+        try {
+            if (batchMode) {
+                current.schedule(drainTask, BATCH_WINDOW_MS, TimeUnit.MILLISECONDS);
+            } else {
+                current.execute(drainTask);
+            }
+        } catch (RejectedExecutionException e) {
+            drainScheduled.set(false);
+        }
+    }
+    
+    // Флаг снимается только после разбора: у кольца один читатель, две задачи разбора не пересекаются
+    private void drainScheduledRequests() {
+        dispatchPending();
+        drainScheduled.set(false);
+        if (!externalRequests.isEmpty()) {
+            signalDispatch();
+        }
+    }
+    
+    // Основной цикл диспетчера: спит до появления вызова или до следующего тика, затем разбирает всё накопившееся
     private void dispatchLoop() {
-        log("Диспетчер запущен");
+        log(LogLevel.INFO, "Диспетчер запущен");
+        
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MS);
+        long nextTick = System.nanoTime() + tickNanos;
+        while (running && !Thread.currentThread().isInterrupted()) {
+            long untilTick = nextTick - System.nanoTime();
+            if (externalRequests.isEmpty() && untilTick > 0) {
+                LockSupport.parkNanos(this, untilTick);
+            }
+            if (!externalRequests.isEmpty()) {
+                if (batchMode) {
+                    awaitBatchWindow();
+                }
+                dispatchPending();
+            }
+            if (System.nanoTime() - nextTick >= 0) {
+                tick();
+                nextTick = System.nanoTime() + tickNanos;
+            }
+        }
+        log(LogLevel.INFO, "Диспетчер остановлен");
+    }
+    
+    // Пакетный режим: после первого вызова ждём BATCH_WINDOW_MS, новые вызовы копятся в очереди
+    private void awaitBatchWindow() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+    
+    // Разбор всех накопившихся вызовов без ожидания (для пошаговой симуляции)
+    public void dispatchPending() {
+        if (batchMode) {
+            batchSize = 0;
+            externalRequests.drain(batchCollector);
+            if (batchSize > 0) {
+                assignBatch(batch, batchSize);
+            }
+            return;
+        }
+        while (externalRequests.drain(assigner) > 0) {
+            // кольцо разбирается порциями не больше ёмкости, пока не опустеет
+        }
+    }
+    
+    // Фоновая работа раз в TICK_MS: старение статистики спроса, переназначение ожидающих вызовов
+    // и парковка свободных лифтов
+    public void tick() {
+        long now = clock.now();
+        predictor.age(now);
+        if (reassignEnabled) {
+            reassignHallCalls();
+        }
+        if (parkingEnabled) {
+            parkIdleElevators(now);
+        }
+    }
+    
+    // Назначение не окончательно: пока лифт не приехал, вызов переходит к другому, если тот теперь
+    // приедет заметно раньше - освободился рядом, а назначенный набрал новых остановок
+    private void reassignHallCalls() {
+        for (int floor = 1; floor <= config.getFloors(); floor++) {
+            reassignHallCall(floor, Direction.UP);
+            reassignHallCall(floor, Direction.DOWN);
+        }
+    }
+    
+    private void reassignHallCall(int floor, Direction direction) {
+        int owner = hallCalls.getOwner(floor, direction);
+        if (owner < 0 || owner >= elevators.size()) return;
+        // Лифт с вызовом в обратную сторону с того же этажа остановится там всё равно
+        Direction opposite = direction == Direction.UP ? Direction.DOWN : Direction.UP;
+        if (hallCalls.getOwner(floor, opposite) == owner) return;
+        
+        Elevator current = elevators.get(owner);
+        Elevator best = null;
+        long bestScore = (long) calculateScore(current, floor, direction) - REASSIGN_MARGIN_MS;
+        for (Elevator elevator : eligibleByFloor[floor]) {
+            if (elevator == current) continue;
+            int score = calculateScore(elevator, floor, direction);
+            if (score < bestScore) {
+                bestScore = score;
+                best = elevator;
+            }
+        }
+        // Снять вызов нельзя, если он ещё в очереди лифта или лифт уже открывает на этаже двери
+        if (best == null || !current.revokeHallCall(floor, direction)) return;
+        // Лифт мог обслужить вызов между оценкой и снятием (остановка по другой причине)
+        if (!hallCalls.reassign(floor, direction, owner, best.getIdNum())) return;
+        // Перенос не отклоняется: при заполненной очереди нового лифта вызов сливается
+        if (!best.addHallCall(floor, direction)) {
+            best.coalesceHallCall(floor, direction);
+            coalescedCalls.incrementAndGet();
+        }
+        reassignedCalls.incrementAndGet();
+        if (isLogEnabled(LogLevel.INFO)) {
+            log(LogLevel.INFO, "Вызов с этажа " + floor + " (" + direction + ") переназначен: лифт " + owner
+                    + " -> лифт " + best.getIdNum());
+        }
+    }
+    
+    // Свободные лифты разъезжаются по этажам с наибольшим ожидаемым спросом: на каждый этаж
+    // из рейтинга - ближайший свободный лифт, если там ещё никто не стоит и никто туда не едет
+    private void parkIdleElevators(long now) {
+        List<Elevator> free = new ArrayList<>();
+        FloorSet parkingTargets = new FloorSet(config.getFloors());
+        for (Elevator elevator : elevators) {
+            ElevatorSnapshot snapshot = elevator.getSnapshot();
+            if (snapshot.getParkingFloor() != -1) {
+                parkingTargets.add(snapshot.getParkingFloor());
+            } else if (snapshot.getState() == ElevatorState.IDLE && !snapshot.hasTargets()
+                    && snapshot.getWaitingPassengers() == 0) {
+                free.add(elevator);
+            }
+        }
+        if (free.isEmpty()) return;
         
-        while (running) {
-            try {
-                Request request = externalRequests.poll(200, TimeUnit.MILLISECONDS);
-                if (request != null) {
-                    assignRequest(request);
+        for (int floor : predictor.rankFloors(now, free.size() + parkingTargets.size())) {
+            if (free.isEmpty()) break;
+            if (parkingTargets.contains(floor)) continue;
+            
+            Elevator nearest = null;
+            int nearestDistance = Integer.MAX_VALUE;
+            for (Elevator elevator : free) {
+                int distance = Math.abs(elevator.getCurrentFloor() - floor);
+                if (elevator.serves(floor) && distance < nearestDistance) {
+                    nearest = elevator;
+                    nearestDistance = distance;
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+            }
+            if (nearest == null) continue;
+            free.remove(nearest);
+            if (nearestDistance > 0 && !nearest.park(floor)) {
+                reject(RejectReason.QUEUE_FULL, "Очередь лифта " + nearest.getIdNum() + " заполнена, парковка на этаже " + floor + " отменена");
             }
         }
-        log("Диспетчер остановлен");
+    }
+    
+    public void setReassignEnabled(boolean reassignEnabled) {
+        this.reassignEnabled = reassignEnabled;
+    }
+    
+    public long getReassignedCalls() {
+        return reassignedCalls.get();
+    }
+    
+    public void setParkingEnabled(boolean parkingEnabled) {
+        this.parkingEnabled = parkingEnabled;
+    }
+    
+    public TrafficPredictor getPredictor() {
+        return predictor;
+    }
+    
+    public void setWeights(DispatchWeights weights) {
+        this.weights = weights;
+    }
+    
+    public DispatchWeights getWeights() {
+        return weights;
+    }
+    
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    public void setBatchMode(boolean batchMode) {
+        this.batchMode = batchMode;
+    }
+    
+    public boolean isBatchMode() {
+        return batchMode;
     }
     
     public void addExternalRequest(int floor, Direction direction) {
         if (!isValidFloor(floor)) {
-            log("Ошибка: неверный этаж " + floor);
+            reject(RejectReason.INVALID_FLOOR, "Ошибка: неверный этаж " + floor);
             return;
         }
         
         if (!isValidDirection(floor, direction)) {
-            log("Ошибка: неверное направление для этажа " + floor + " - " + direction);
+            reject(RejectReason.INVALID_DIRECTION, "Ошибка: неверное направление для этажа " + floor + " - " + direction);
             return;
         }
         
-        Request request = new Request(floor, -1, direction, RequestType.EXTERNAL);
-        externalRequests.offer(request);
-        log("Новый вызов: этаж " + floor + ", направление " + direction);
+        if (eligibleByFloor[floor].length == 0) {
+            reject(RejectReason.FLOOR_NOT_SERVED, "Ошибка: этаж " + floor + " не обслуживается ни одним лифтом");
+            return;
+        }
+        
+        long now = clock.now();
+        if (!hallCalls.register(floor, direction, now)) {
+            if (isLogEnabled(LogLevel.DEBUG)) {
+                log(LogLevel.DEBUG, "Вызов с этажа " + floor + " (" + direction + ") уже ожидает лифт " 
+                        + hallCalls.getOwner(floor, direction) + ", повторное нажатие объединено");
+            }
+            return;
+        }
+        
+        predictor.recordCall(floor, direction, now);
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            journal.hallCall(floor, direction, now);
+        }
+        if (!externalRequests.offer(Request.pack(RequestType.EXTERNAL, floor, direction, now), System.nanoTime())) {
+            // Не случается: зарегистрированных вызовов не больше ёмкости очереди
+            releaseHallCall(floor, direction);
+            reject(RejectReason.QUEUE_FULL, "Очередь вызовов переполнена, вызов с этажа " + floor + " отклонён");
+            return;
+        }
+        signalDispatch();
+        if (isLogEnabled(LogLevel.INFO)) {
+            log(LogLevel.INFO, "Новый вызов: этаж " + floor + ", направление " + direction);
+        }
     }
 
     public void addInternalRequest(int targetFloor, int elevatorId) {
         if (!isValidFloor(targetFloor)) {
-            log("Ошибка: неверный целевой этаж " + targetFloor);
+            reject(RejectReason.INVALID_FLOOR, "Ошибка: неверный целевой этаж " + targetFloor);
             return;
         }
         
         if (elevatorId >= 0 && elevatorId < elevators.size()) {
-            Request request = new Request(targetFloor, elevatorId);
-            elevators.get(elevatorId).addRequest(request);
-            log("Внутренний вызов на этаж " + targetFloor + " для лифта " + elevatorId);
+            Elevator elevator = elevators.get(elevatorId);
+            if (!elevator.serves(targetFloor)) {
+                int transfer = config.findTransferFloor(elevator.getCurrentFloor(), targetFloor);
+                reject(RejectReason.FLOOR_NOT_SERVED, "Лифт " + elevatorId + " не останавливается на этаже " + targetFloor
+                        + (transfer > 0 ? ", пересадка на этаже " + transfer : ""));
+                return;
+            }
+            long now = clock.now();
+            if (!elevator.addCarCall(targetFloor, now)) {
+                // Цель из кабины другому лифту не передать: переполнение либо сливается, либо отклоняется
+                if (overflowPolicy != OverflowPolicy.COALESCE) {
+                    reject(RejectReason.QUEUE_FULL, "Очередь лифта " + elevatorId + " заполнена, вызов на этаж " + targetFloor + " отклонён");
+                    return;
+                }
+                elevator.coalesceCarCall(targetFloor, now);
+                coalescedCalls.incrementAndGet();
+            }
+            // В журнал цель пишет сам лифт, когда примет её: кнопку этажа, где он уже стоит, он отбросит
+            log(LogLevel.INFO, "Внутренний вызов на этаж " + targetFloor + " для лифта " + elevatorId);
         } else {
-            log("Ошибка: неверный ID лифта " + elevatorId);
+            reject(RejectReason.INVALID_ELEVATOR, "Ошибка: неверный ID лифта " + elevatorId);
         }
     }
 
+    // Режим выбора этажа: пассажир вводит цель на этаже, лифт назначается сразу, и его номер
+    // возвращается вызывающему для табло. Пассажиры с общими целями собираются в один лифт.
+    // В зонированном здании лифт везёт до этажа пересадки. Возвращает -1, если вызов отклонён
+    public int addDestinationRequest(int sourceFloor, int targetFloor) {
+        return dispatchDestination(sourceFloor, targetFloor, clock.now());
+    }
+    
+    private int dispatchDestination(int sourceFloor, int targetFloor, long journeyStartedAt) {
+        if (!isValidFloor(sourceFloor) || !isValidFloor(targetFloor) || sourceFloor == targetFloor) {
+            reject(RejectReason.INVALID_FLOOR, "Ошибка: неверная поездка " + sourceFloor + " -> " + targetFloor);
+            return -1;
+        }
+        
+        int legTarget = targetFloor;
+        if (!config.isDirectlyServed(sourceFloor, targetFloor)) {
+            legTarget = config.findTransferFloor(sourceFloor, targetFloor);
+            if (legTarget < 0) {
+                reject(RejectReason.NO_ELEVATOR, "Ошибка: нет лифтов для поездки " + sourceFloor + " -> " + targetFloor);
+                return -1;
+            }
+            log(LogLevel.INFO, "Поездка " + sourceFloor + " -> " + targetFloor + " с пересадкой на этаже " + legTarget);
+        }
+        
+        Direction direction = legTarget > sourceFloor ? Direction.UP : Direction.DOWN;
+        Request request = new Request(sourceFloor, legTarget, direction, RequestType.DESTINATION);
+        request.markCreated(clock.now());
+        request.markJourneyStarted(journeyStartedAt);
+        if (legTarget != targetFloor) {
+            request.markTransfer(targetFloor);
+        }
+        predictor.recordCall(sourceFloor, direction, request.getCreatedAt());
+        
+        // Второй по оценке лифт - для перелива (SPILL), если очередь лучшего заполнена
+        Elevator best = null;
+        Elevator runnerUp = null;
+        int bestScore = Integer.MAX_VALUE;
+        int runnerUpScore = Integer.MAX_VALUE;
+        for (Elevator elevator : eligibleByFloor[sourceFloor]) {
+            if (!elevator.serves(legTarget)) continue;
+            int score = calculateDestinationScore(elevator, request);
+            if (score < bestScore) {
+                runnerUp = best;
+                runnerUpScore = bestScore;
+                bestScore = score;
+                best = elevator;
+            } else if (score < runnerUpScore) {
+                runnerUpScore = score;
+                runnerUp = elevator;
+            }
+        }
+        if (best == null) {
+            reject(RejectReason.NO_ELEVATOR, "Ошибка: нет лифтов для поездки " + sourceFloor + " -> " + legTarget);
+            return -1;
+        }
+        
+        request.markAssigned(clock.now());
+        if (!best.addDestinationRequest(request)) {
+            if (overflowPolicy == OverflowPolicy.COALESCE) {
+                best.coalesceDestinationRequest(request);
+                coalescedCalls.incrementAndGet();
+            } else if (overflowPolicy == OverflowPolicy.SPILL && runnerUp != null) {
+                log(LogLevel.WARN, "Очередь лифта " + best.getIdNum() + " заполнена, выбираем другой");
+                best = runnerUp;
+                request.markAssigned(clock.now());
+                if (!best.addDestinationRequest(request)) {
+                    reject(RejectReason.QUEUE_FULL, "Очереди лифтов заполнены, поездка " + sourceFloor + " -> " + legTarget + " отклонена");
+                    return -1;
+                }
+            } else {
+                reject(RejectReason.QUEUE_FULL, "Очередь лифта " + best.getIdNum() + " заполнена, поездка " + sourceFloor + " -> " + legTarget + " отклонена");
+                return -1;
+            }
+        }
+        // В журнал - вся поездка до конечного этажа: при восстановлении пересадка найдётся заново
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            journal.destination(best.getIdNum(), sourceFloor, targetFloor, request.getAssignedAt());
+        }
+        log(LogLevel.INFO, "Поездка " + sourceFloor + " -> " + legTarget + " назначена лифту " + best.getIdNum());
+        return best.getIdNum();
+    }
+
     private boolean isValidFloor(int floor) {
-        return floor >= 1 && floor <= BuildingConfig.FLOORS;
+        return floor >= 1 && floor <= config.getFloors();
     }
 
     private boolean isValidDirection(int floor, Direction direction) {
         if (floor == 1 && direction == Direction.DOWN) return false;
-        if (floor == BuildingConfig.FLOORS && direction == Direction.UP) return false;
+        if (floor == config.getFloors() && direction == Direction.UP) return false;
         return true;
     }
     
-    private void assignRequest(Request request) {
-        Elevator bestElevator = findBestElevator(request);
-        if (bestElevator != null) {
-            try {
-                if (bestElevator.addRequestWithTimeout(request, 100, TimeUnit.MILLISECONDS)) {
-                    log("Вызов с этажа " + request.getSourceFloor() + " назначен лифту " + bestElevator.getIdNum());
-                } else {
-                    log("Не удалось назначить вызов лифту " + bestElevator.getIdNum() + ", выбираем другой");
-                    assignToNextBest(request, bestElevator);
+    private void assignRequest(long packed) {
+        deliver(packed, selectBest(Request.packedFloor(packed), Request.packedDirection(packed), null));
+    }
+    
+    // Совместное назначение пакета вызовов: матрица стоимостей вызов x (лифт, место в очереди лифта)
+    // решается венгерским алгоритмом, поэтому всплеск вызовов не сваливается на один лучший лифт
+    private void assignBatch(long[] batch, int size) {
+        if (size == 1 || elevators.size() < 2) {
+            for (int r = 0; r < size; r++) {
+                assignRequest(batch[r]);
+            }
+            return;
+        }
+        
+        int cars = elevators.size();
+        int slots = (size + cars - 1) / cars;
+        long extraStopCost = weights.getBatchExtraStopCost();
+        long[][] cost = new long[size][cars * slots];
+        for (int r = 0; r < size; r++) {
+            int floor = Request.packedFloor(batch[r]);
+            Direction direction = Request.packedDirection(batch[r]);
+            for (int c = 0; c < cars; c++) {
+                Elevator elevator = elevators.get(c);
+                long score = elevator.serves(floor) ? calculateScore(elevator, floor, direction) : INELIGIBLE_COST;
+                for (int k = 0; k < slots; k++) {
+                    cost[r][c * slots + k] = score + k * extraStopCost;
                 }
-            } catch (Exception e) {
-                log("Ошибка при назначении лифту " + bestElevator.getIdNum() + ": " + e.getMessage());
             }
         }
-    }
-
-    private void assignToNextBest(Request request, Elevator excluded) {
-        Elevator best = null;
-        int bestScore = Integer.MAX_VALUE;
         
-        for (Elevator elevator : elevators) {
-            if (elevator == excluded) continue;
-            
-            int score = calculateScore(elevator, request);
-            if (score < bestScore) {
-                bestScore = score;
-                best = elevator;
+        int[] assignment = AssignmentSolver.solve(cost);
+        log(LogLevel.DEBUG, "Пакетное назначение " + size + " вызовов");
+        for (int r = 0; r < size; r++) {
+            Elevator elevator = elevators.get(assignment[r] / slots);
+            deliver(batch[r], elevator.serves(Request.packedFloor(batch[r])) ? elevator : null);
+        }
+    }
+    
+    private void deliver(long packed, Elevator bestElevator) {
+        int floor = Request.packedFloor(packed);
+        Direction direction = Request.packedDirection(packed);
+        if (bestElevator == null) {
+            releaseHallCall(floor, direction);
+            reject(RejectReason.NO_ELEVATOR, "Ошибка: нет лифта для вызова с этажа " + floor);
+            return;
+        }
+        try {
+            if (enqueueHallCall(bestElevator, floor, direction)) {
+                if (isLogEnabled(LogLevel.INFO)) {
+                    log(LogLevel.INFO, "Вызов с этажа " + floor + " назначен лифту " + bestElevator.getIdNum());
+                }
+            } else if (overflowPolicy == OverflowPolicy.SPILL) {
+                log(LogLevel.WARN, "Очередь лифта " + bestElevator.getIdNum() + " заполнена, выбираем другой");
+                assignToNextBest(floor, direction, bestElevator);
+            } else {
+                releaseHallCall(floor, direction);
+                reject(RejectReason.QUEUE_FULL, "Очередь лифта " + bestElevator.getIdNum() + " заполнена, вызов с этажа " + floor + " отклонён");
             }
+        } catch (Exception e) {
+            releaseHallCall(floor, direction);
+            log(LogLevel.ERROR, "Ошибка при назначении лифту " + bestElevator.getIdNum() + ": " + e.getMessage());
         }
+    }
+    
+    // Постановка вызова в очередь лифта; при заполненной очереди и политике COALESCE вызов сливается
+    // с ожидающими вызовами лифта. Владелец записывается до постановки, чтобы прибытие лифта не обогнало запись
+    private boolean enqueueHallCall(Elevator elevator, int floor, Direction direction) {
+        hallCalls.assign(floor, direction, elevator.getIdNum(), clock.now());
+        if (elevator.addHallCall(floor, direction)) return true;
+        if (overflowPolicy != OverflowPolicy.COALESCE) return false;
+        elevator.coalesceHallCall(floor, direction);
+        coalescedCalls.incrementAndGet();
+        return true;
+    }
+
+    // Перелив: вызов уходит следующему лучшему лифту, если заполнена и его очередь - отклоняется
+    private void assignToNextBest(int floor, Direction direction, Elevator excluded) {
+        Elevator best = selectBest(floor, direction, excluded);
         
-        if (best != null) {
-            best.addRequest(request);
-            log("Вызов переназначен лифту " + best.getIdNum());
+        if (best != null && enqueueHallCall(best, floor, direction)) {
+            log(LogLevel.INFO, "Вызов переназначен лифту " + best.getIdNum());
+            return;
         }
+        releaseHallCall(floor, direction);
+        reject(best == null ? RejectReason.NO_ELEVATOR : RejectReason.QUEUE_FULL,
+                "Не удалось переназначить вызов с этажа " + floor + ", вызов отклонён");
     }
     
-    private Elevator findBestElevator(Request request) {
+    // Переполнение очереди лифта при прямой постановке запроса (Elevator.addRequest) - та же политика
+    // и те же счётчики, что у вызовов диспетчера. Запрос адресован этому лифту, поэтому SPILL, как и
+    // для целей из кабины, означает отказ. Возвращает true, если запрос слит с ожидающими
+    boolean onQueueFull(Elevator elevator, RequestType type, int floor, Direction direction, long createdAt) {
+        if (overflowPolicy == OverflowPolicy.COALESCE && type == RequestType.EXTERNAL) {
+            elevator.coalesceHallCall(floor, direction);
+        } else if (overflowPolicy == OverflowPolicy.COALESCE && type == RequestType.INTERNAL) {
+            elevator.coalesceCarCall(floor, createdAt);
+        } else {
+            reject(RejectReason.QUEUE_FULL, "Очередь лифта " + elevator.getIdNum() + " заполнена, запрос на этаж " + floor + " отклонён");
+            return false;
+        }
+        coalescedCalls.incrementAndGet();
+        return true;
+    }
+    
+    private void reject(RejectReason reason, String message) {
+        rejections.incrementAndGet(reason.ordinal());
+        log(LogLevel.WARN, message);
+    }
+    
+    public long getRejections(RejectReason reason) {
+        return rejections.get(reason.ordinal());
+    }
+    
+    public long getRejectedCount() {
+        long total = 0;
+        for (int i = 0; i < rejections.length(); i++) {
+            total += rejections.get(i);
+        }
+        return total;
+    }
+    
+    public long getCoalescedCalls() {
+        return coalescedCalls.get();
+    }
+    
+    private void releaseHallCall(int floor, Direction direction) {
+        hallCalls.release(floor, direction);
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            journal.hallCleared(floor, direction, -1, clock.now());
+        }
+    }
+    
+    Elevator findBestElevator(Request request) {
+        return selectBest(request.getSourceFloor(), request.getDirection(), null);
+    }
+    
+    // В большом парке оцениваются только кандидаты из индекса; если среди них нет подходящего
+    // (все заняты далеко или не обслуживают этаж) - полный перебор лифтов этажа
+    private Elevator selectBest(int floor, Direction direction, Elevator excluded) {
+        Elevator[] eligible = eligibleByFloor[floor];
+        if (eligible.length > SMALL_FLEET) {
+            candidateIndex.candidates(floor, direction, candidates);
+            Elevator best = null;
+            int bestScore = Integer.MAX_VALUE;
+            for (int w = 0; w < candidates.length; w++) {
+                for (long word = candidates[w]; word != 0; word &= word - 1) {
+                    Elevator elevator = elevators.get(w * 64 + Long.numberOfTrailingZeros(word));
+                    if (elevator == excluded || !elevator.serves(floor)) continue;
+                    int score = calculateScore(elevator, floor, direction);
+                    if (score < bestScore) {
+                        bestScore = score;
+                        best = elevator;
+                    }
+                }
+            }
+            if (best != null) return best;
+        }
+        
         Elevator best = null;
         int bestScore = Integer.MAX_VALUE;
-        
-        for (Elevator elevator : elevators) {
-            int score = calculateScore(elevator, request);
+        for (Elevator elevator : eligible) {
+            if (elevator == excluded) continue;
+            int score = calculateScore(elevator, floor, direction);
             if (score < bestScore) {
                 bestScore = score;
                 best = elevator;
             }
         }
-        
         return best;
     }
     
-    private int calculateScore(Elevator elevator, Request request) {
-    int currentFloor = elevator.getCurrentFloor();
-    int requestFloor = request.getSourceFloor();
-    Direction requestDir = request.getDirection();
-    Direction elevatorDir = elevator.getDirection();
-    ElevatorState state = elevator.getElevatorState();
+    // Оценка по одному снимку лифта: согласованные данные без захвата lock лифта.
+    // Время до прибытия на этаж вызова по маршруту лифта плюс загрузка: полный лифт проедет мимо вызова
+    private int calculateScore(Elevator elevator, int floor, Direction direction) {
+        ElevatorSnapshot snapshot = elevator.getSnapshot();
+        long eta = etaModel.timeToFloor(snapshot, floor, direction);
+        DispatchWeights current = weights;
+        long load = snapshot.isFull() ? current.getFullCarCost() : (long) snapshot.getPassengers() * current.getPassengerCost();
+        return (int) Math.min(Integer.MAX_VALUE, eta + load);
+    }
+
+    // Оценка для режима выбора этажа: к пути до пассажира добавляются новые остановки,
+    // которые лифту придётся сделать ради него, и ждущие посадки попутчики,
+    // чтобы при равных остановках пассажиры распределялись по лифтам
+    private int calculateDestinationScore(Elevator elevator, Request request) {
+        ElevatorSnapshot snapshot = elevator.getSnapshot();
+        DispatchWeights current = weights;
+        int score = calculateScore(elevator, request.getSourceFloor(), request.getDirection()) + snapshot.getWaitingPassengers() * current.getPassengerCost();
+        if (!snapshot.hasTarget(request.getSourceFloor())) {
+            score += current.getDestinationStopCost();
+        }
+        int target = request.getTargetFloor();
+        if (!snapshot.hasTarget(target) && !snapshot.hasDestination(target)) {
+            score += current.getDestinationStopCost();
+        }
+        return score;
+    }
+
+    // Лифт открыл двери на этаже: обслужен его вызов в сторону, куда он отсюда уйдёт.
+    // Вызов в обратную сторону остаётся за лифтом до разворота
+    public void onElevatorArrived(Elevator elevator, int floor, Direction departing) {
+        if (departing == Direction.UP || departing == Direction.DOWN) {
+            serveHallCall(elevator, floor, departing);
+        }
+    }
     
-    if (state == ElevatorState.IDLE) {
-        return Math.abs(currentFloor - requestFloor);
+    private void serveHallCall(Elevator elevator, int floor, Direction direction) {
+        long assignedAt = hallCalls.getAssignedAt(floor, direction);
+        long createdAt = hallCalls.clearServed(floor, direction, elevator.getIdNum());
+        if (createdAt < 0) return;
+        
+        long arrivedAt = clock.now();
+        long waitMs = arrivedAt - createdAt;
+        if (system != null) {
+            system.getMetrics().recordHallCallServed(createdAt, assignedAt, arrivedAt);
+        }
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            journal.hallCleared(floor, direction, elevator.getIdNum(), arrivedAt);
+        }
+        if (isLogEnabled(LogLevel.DEBUG)) {
+            log(LogLevel.DEBUG, "Вызов с этажа " + floor + " обслужен лифтом " + elevator.getIdNum() + " за " + waitMs + " мс");
+        }
+        HallCallListener listener = hallCallListener;
+        if (listener != null) {
+            listener.onHallCallServed(floor, direction, elevator.getIdNum(), waitMs);
+        }
     }
     
-    if (elevatorDir == requestDir) {
-        if (elevatorDir == Direction.UP && requestFloor >= currentFloor) {
-            int distance = requestFloor - currentFloor;
-            int stopsPenalty = countStopsBetween(elevator, currentFloor, requestFloor);
-            return distance + stopsPenalty * 2;
+    // Пассажир режима выбора этажа сел в назначенный лифт: ожидание закончено
+    public void onDestinationBoarded(Elevator elevator, Request request) {
+        request.markArrived(clock.now());
+        long waitMs = request.getWaitTime();
+        if (system != null) {
+            system.getMetrics().recordHallCallServed(request.getCreatedAt(), request.getAssignedAt(), request.getArrivedAt());
         }
-        if (elevatorDir == Direction.DOWN && requestFloor <= currentFloor) {
-            int distance = currentFloor - requestFloor;
-            int stopsPenalty = countStopsBetween(elevator, requestFloor, currentFloor);
-            return distance + stopsPenalty * 2;
+        // Севший с пересадкой едет до этажа пересадки, а второе плечо ждёт в журнале как поездка
+        // оттуда: после падения пассажира довезут до пересадки и вызовут ему лифт дальше
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            int onward = request.getOnwardFloor();
+            int car = elevator.getIdNum();
+            journal.destinationBoarded(car, request.getSourceFloor(), onward >= 0 ? onward : request.getTargetFloor(), request.getArrivedAt());
+            journal.carTarget(car, request.getTargetFloor(), request.getArrivedAt());
+            if (onward >= 0) {
+                journal.destination(car, request.getTargetFloor(), onward, request.getArrivedAt());
+            }
+        }
+        HallCallListener listener = hallCallListener;
+        if (listener != null) {
+            listener.onHallCallServed(request.getSourceFloor(), request.getDirection(), elevator.getIdNum(), waitMs);
         }
     }
     
-    List<Integer> targets = elevator.getTargetFloors();
-    int remainingStops = targets.size();
-    int furthestTarget = getFurthestTarget(elevator, targets);
-    int distanceToFinish = Math.abs(currentFloor - furthestTarget);
-    int distanceAfterFinish = Math.abs(furthestTarget - requestFloor);
+    // Пассажир с пересадкой вышел на этаже пересадки: второе плечо - новая поездка с этого этажа,
+    // время всей поездки считается от первого нажатия
+    public void onTransferReached(Elevator elevator, Request request) {
+        int transferFloor = request.getTargetFloor();
+        log(LogLevel.INFO, "Пересадка на этаже " + transferFloor + " из лифта " + elevator.getIdNum()
+                + ", дальше на этаж " + request.getOnwardFloor());
+        EventJournal journal = getJournal();
+        if (journal != null) {
+            journal.destinationBoarded(elevator.getIdNum(), transferFloor, request.getOnwardFloor(), clock.now());
+        }
+        dispatchDestination(transferFloor, request.getOnwardFloor(), request.getJourneyStartedAt());
+    }
     
-    return distanceToFinish + distanceAfterFinish + remainingStops * 10;
+    public void setHallCallListener(HallCallListener hallCallListener) {
+        this.hallCallListener = hallCallListener;
     }
-
-    private int countStopsBetween(Elevator elevator, int from, int to) {
-        int stops = 0;
-        List<Integer> targets = elevator.getTargetFloors();
-        for (int target : targets) {
-            if (target >= from && target <= to) {
-                stops++;
-            }
-        }
-        return stops;
+    
+    public int getQueueDepth() {
+        return externalRequests.size();
     }
-
-    private int getFurthestTarget(Elevator elevator, List<Integer> targets) {
-        if (targets.isEmpty()) return elevator.getCurrentFloor();
-        
-        int current = elevator.getCurrentFloor();
-        Direction dir = elevator.getDirection();
-        
-        if (dir == Direction.UP) {
-            return Collections.max(targets);
-        } else if (dir == Direction.DOWN) {
-            return Collections.min(targets);
+    
+    public int getOutstandingHallCalls() {
+        return hallCalls.getOutstandingCount();
+    }
+    
+    // Пассажиры режима выбора этажа, назначенные лифтам и ещё не севшие
+    public int getWaitingPassengers() {
+        int waiting = 0;
+        for (Elevator elevator : elevators) {
+            waiting += elevator.getSnapshot().getWaitingPassengers();
         }
-        return current;
+        return waiting;
     }
     
-    private void log(String message) {
-        System.out.println(message);
-        if (system != null && system.getGUI() != null) {
-            system.getGUI().addLog(message);
+    private EventJournal getJournal() {
+        return system != null ? system.getJournal() : null;
+    }
+    
+    private void log(LogLevel level, String message) {
+        if (system != null) {
+            system.log(level, message);
+        } else {
+            System.out.println(message);
         }
     }
     
+    private boolean isLogEnabled(LogLevel level) {
+        return system == null || system.isLogEnabled(level);
+    }
+    
     public void stop() {
         running = false;
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
     }
 }
\ No newline at end of file
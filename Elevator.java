@@ -1,46 +1,265 @@
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-public class Elevator extends Thread {
+public class Elevator implements Runnable {
+    public static final long FLOOR_TRAVEL_MS = 500;
+    public static final long DOORS_OPENING_MS = 1000;
+    // Номинальная стоянка с открытыми дверями (двое входят или выходят) - для весов диспетчера;
+    // настоящая зависит от числа пассажиров: MIN_DWELL_MS + TRANSFER_MS на каждого, не больше MAX_DWELL_MS
+    public static final long LOADING_MS = 1500;
+    public static final long MIN_DWELL_MS = 500;
+    public static final long TRANSFER_MS = 500;
+    public static final long MAX_DWELL_MS = 6000;
+    public static final long DOORS_CLOSING_MS = 1000;
+    // Двери закрываются шагами: так лифт замечает вызов на свой этаж и открывает их обратно
+    public static final long DOOR_SLICE_MS = 250;
+    public static final int CAPACITY = 12;
+    // Ёмкость очереди запросов лифта по умолчанию (-Delevator.queue.capacity)
+    public static final int QUEUE_CAPACITY = 256;
+    
     private final int id;
+    private final String name;
     private int currentFloor;
     private Direction direction;
     private ElevatorState status;
-    private final TreeSet<Integer> targetFloors;
+    private final FloorSet targetFloors;
+    // Этажи зоны обслуживания лифта; null - все этажи
+    private final FloorSet servedFloors;
+    // Поездки, которые заканчиваются на этаже: нажатия кнопки этажа в кабине и севшие пассажиры
+    // режима выбора этажа - по одной на пассажира, для времени поездки
+    private final Map<Integer, List<Request>> carCalls;
+    // Режим выбора этажа: назначенные лифту пассажиры по этажу посадки и карта их целей
+    private final Map<Integer, List<Request>> waitingPassengers;
+    private final FloorSet destinations;
+    // Севшие пассажиры с пересадкой по этажу пересадки: там их поездка не завершается, а продолжается
+    private final Map<Integer, List<Request>> transferRiders;
+    private int waitingCount;
+    // Загрузка: пассажиры в кабине, из них с известным этажом выхода - по этажам (alightAt);
+    // остальные сели по вызову с этажа и ещё не нажали кнопку в кабине
+    private int passengers;
+    private int[] alightAt;
+    // Этажи вызовов с этажа, назначенных лифту, по направлению вызова, и вызовы, пропущенные полным лифтом.
+    // Вызов в обратную сторону лифт проезжает, пока впереди есть цели, и забирает после разворота
+    private final FloorSet hallStopsUp;
+    private final FloorSet hallStopsDown;
+    private final FloorSet deferredPickups;
+    // Этаж парковки без целей: лифт едет туда без остановки и открытия дверей; -1 - нет
+    private int parkingFloor = -1;
+    // Ближайшая фаза посадки, вся стоянка на текущей остановке (не больше MAX_DWELL_MS, сколько бы
+    // вызовов ни пришло) и сколько уже длится закрытие дверей; только поток, исполняющий лифт
+    private long dwellMs;
+    private long stopDwellMs;
+    private long closingElapsedMs;
     private final ReentrantLock lock;
-    private final BlockingQueue<Request> requestQueue;
+    // Входящие запросы, упакованные в long (Request.pack), с моментом постановки (System.nanoTime)
+    private final MpscLongRing requestQueue;
+    private final MpscLongRing.Consumer acceptor;
+    // Снимок публикуется один раз на пачку принятых запросов
+    private boolean acceptedChanges;
+    // Вызовы, слитые при переполнении очереди (OverflowPolicy.COALESCE): по этажу*3 - вызов с этажа вверх,
+    // этажу*3+1 - вниз, этажу*3+2 - цель из кабины; значение - время первого нажатия + 1, 0 - пусто
+    private final AtomicLongArray coalesced;
+    private final AtomicBoolean hasCoalesced;
     private final ElevatorSystem system;
+    private volatile ElevatorSnapshot snapshot;
+    private long version;
+    private final AtomicBoolean parked;
+    private volatile Runnable wakeupHandler;
+    // Разбор очереди занятого лифта вне очереди шагов (планировщик); одна задача на пачку запросов
+    private volatile Runnable drainHandler;
+    private final AtomicBoolean drainScheduled;
+    private volatile Thread waiter;
+    private volatile Consumer<ElevatorSnapshot> snapshotListener;
+    private volatile long acceptedRequests;
+    private volatile long acceptLatencyTotalNanos;
+    private volatile long acceptLatencyMaxNanos;
     
     public Elevator(int id, int startFloor, ElevatorSystem system) {
         this.id = id;
         this.currentFloor = startFloor;
         this.direction = Direction.NONE;
         this.status = ElevatorState.IDLE;
-        this.targetFloors = new TreeSet<>();
+        int floors = system != null ? system.getConfig().getFloors() : BuildingConfig.FLOORS;
+        this.targetFloors = new FloorSet(floors);
+        this.servedFloors = system != null ? system.getConfig().getGroupOfCar(id).getServedFloors() : null;
+        this.carCalls = new HashMap<>();
+        this.waitingPassengers = new HashMap<>();
+        this.destinations = new FloorSet(floors);
+        this.transferRiders = new HashMap<>();
+        this.alightAt = new int[floors + 1];
+        this.hallStopsUp = new FloorSet(floors);
+        this.hallStopsDown = new FloorSet(floors);
+        this.deferredPickups = new FloorSet(floors);
         this.lock = new ReentrantLock();
-        this.requestQueue = new LinkedBlockingQueue<>();
+        this.requestQueue = new MpscLongRing(Integer.getInteger("elevator.queue.capacity", QUEUE_CAPACITY));
+        this.acceptor = this::acceptRequest;
+        this.coalesced = new AtomicLongArray((floors + 1) * 3);
+        this.hasCoalesced = new AtomicBoolean();
         this.system = system;
-        setName("Elevator-" + id);
+        this.parked = new AtomicBoolean();
+        this.drainScheduled = new AtomicBoolean();
+        this.name = "Elevator-" + id;
+        publishSnapshot();
     }
     
     public ElevatorSystem getSystem() {
         return system;
     }
     
+    // Блокирующий цикл для исполнения в отдельном (платформенном или виртуальном) потоке.
+    // Для общего планировщика ElevatorSystem вызывает step() напрямую
     @Override
     public void run() {
-        logToGUI(getName() + " запущен на этаже " + currentFloor);
+        announceStart();
+        waiter = Thread.currentThread();
         
         try {
             while (!Thread.currentThread().isInterrupted()) {
-                processRequests();
-                moveToTarget();
-                checkArrival();
-                Thread.sleep(500);
+                awaitNextStep(step());
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            waiter = null;
+        }
+    }
+    
+    // Ожидание следующего шага вместо sleep: поток паркуется до срока шага, новый запрос
+    // будит его (wakeUp) и принимается сразу, а лифт без целей спит до запроса, не просыпаясь по таймеру
+    private void awaitNextStep(long delayMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        while (true) {
+            boolean accepted = processRequests() > 0;
+            if (isIdleWithoutTargets()) {
+                if (accepted) return;
+                LockSupport.park(this);
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return;
+                LockSupport.parkNanos(this, remaining);
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+    
+    private boolean isIdleWithoutTargets() {
+        lock.lock();
+        try {
+            return status == ElevatorState.IDLE && targetFloors.isEmpty() && parkingFloor == -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Парковка для исполнения через планировщик: простаивающий лифт не перепланирует шаги,
+    // а enqueue будит его через wakeUp и wakeupHandler. Возвращает false, если лифт занят или уже есть запросы
+    public boolean tryPark() {
+        if (!isIdleWithoutTargets() || hasPendingRequests()) return false;
+        parked.set(true);
+        // Запрос мог прийти между проверкой и парковкой - тогда будим себя сами
+        if (hasPendingRequests() && parked.compareAndSet(true, false)) {
+            return false;
+        }
+        return true;
+    }
+    
+    public void setWakeupHandler(Runnable wakeupHandler) {
+        this.wakeupHandler = wakeupHandler;
+    }
+    
+    // Для планировщика: лифт в движении или с открытыми дверями до следующего шага не заглядывает
+    // в очередь, поэтому новый запрос будит отдельную задачу разбора (drainRequests)
+    public void setDrainHandler(Runnable drainHandler) {
+        this.drainHandler = drainHandler;
+    }
+    
+    // Разбор очереди без шага автомата. С step() не пересекается: кольцо разбирается только под lock,
+    // поэтому читатель у него по-прежнему один. Флаг снимается до разбора - запрос, пришедший во время
+    // разбора, поставит новую задачу
+    public void drainRequests() {
+        drainScheduled.set(false);
+        processRequests();
+    }
+    
+    // Получает каждый опубликованный снимок (под lock лифта) - например, индекс кандидатов диспетчера
+    public void setSnapshotListener(Consumer<ElevatorSnapshot> snapshotListener) {
+        this.snapshotListener = snapshotListener;
+        lock.lock();
+        try {
+            snapshotListener.accept(snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void announceStart() {
+        log(LogLevel.INFO, getName() + " запущен на этаже " + getCurrentFloor());
+    }
+    
+    // Один шаг автомата лифта, возвращает задержку до следующего шага (мс).
+    // В реальном режиме шаги разделяет sleep, в симуляции - виртуальное время SimulationEngine
+    public long step() {
+        processRequests();
+        
+        switch (currentStatus()) {
+            case DOORS_OPENING: {
+                // Вызов на этот этаж, пришедший пока двери открывались, обслуживается той же остановкой
+                int merged = serveCurrentFloor(ElevatorState.DOORS_OPENING);
+                if (merged >= 0) {
+                    dwellMs += extendDwell(merged);
+                }
+                setStatus(ElevatorState.LOADING);
+                log(LogLevel.INFO, getName() + " посадка/высадка");
+                return dwellMs;
+            }
+            case LOADING: {
+                // Двери ещё открыты: новые пассажиры этого этажа садятся и продлевают стоянку,
+                // пока она не дошла до предела - дальше садятся без продления
+                int merged = serveCurrentFloor(ElevatorState.LOADING);
+                if (merged >= 0) {
+                    long extra = extendDwell(merged);
+                    if (extra > 0) {
+                        log(LogLevel.INFO, getName() + " задерживает двери для вызова на этаж " + currentFloor);
+                        return extra;
+                    }
+                }
+                setStatus(ElevatorState.DOORS_CLOSING);
+                log(LogLevel.INFO, getName() + " закрывает двери");
+                closingElapsedMs = 0;
+                return nextClosingSlice();
+            }
+            case DOORS_CLOSING: {
+                // Вызов на этот этаж во время закрытия: двери открываются обратно за уже пройденное время,
+                // а не после полного закрытия и нового цикла. Стоянка, дошедшая до предела, не продлевается -
+                // такой вызов лифт обслужит новой остановкой
+                int merged = stopDwellMs < MAX_DWELL_MS ? serveCurrentFloor(ElevatorState.DOORS_OPENING) : -1;
+                if (merged >= 0) {
+                    dwellMs = Math.min(dwellFor(merged), MAX_DWELL_MS - stopDwellMs);
+                    stopDwellMs += dwellMs;
+                    log(LogLevel.INFO, getName() + " снова открывает двери на этаже " + currentFloor);
+                    return closingElapsedMs;
+                }
+                if (closingElapsedMs < DOORS_CLOSING_MS) {
+                    return nextClosingSlice();
+                }
+                lock.lock();
+                try {
+                    status = targetFloors.isEmpty() ? 
+                            ElevatorState.IDLE : ElevatorState.MOVING;
+                    publishSnapshot();
+                } finally {
+                    lock.unlock();
+                }
+                return FLOOR_TRAVEL_MS;
+            }
+            default:
+                moveToTarget();
+                return checkArrival() ? DOORS_OPENING_MS : FLOOR_TRAVEL_MS;
         }
     }
     
@@ -48,27 +267,51 @@ public class Elevator extends Thread {
     private void moveToTarget() {
         lock.lock();
         try {
+            if (targetFloors.isEmpty() && parkingFloor != -1 && parkingFloor != currentFloor) {
+                direction = parkingFloor > currentFloor ? Direction.UP : Direction.DOWN;
+                currentFloor += direction == Direction.UP ? 1 : -1;
+                status = ElevatorState.MOVING;
+                publishSnapshot();
+                log(LogLevel.DEBUG, getName() + " едет на парковку, этаж " + currentFloor);
+                return;
+            }
+            parkingFloor = -1;
+            
             if (targetFloors.isEmpty()) {
-                status = ElevatorState.IDLE;
-                direction = Direction.NONE;
+                if (status != ElevatorState.IDLE || direction != Direction.NONE) {
+                    status = ElevatorState.IDLE;
+                    direction = Direction.NONE;
+                    passengers = knownRiders();
+                    releaseDeferredPickups();
+                    publishSnapshot();
+                }
                 return;
             }
             
             if (status == ElevatorState.IDLE || status == ElevatorState.MOVING) {
                 int targetFloor = getNextTarget();
+                Direction previous = direction;
                 
                 if (targetFloor > currentFloor) {
                     direction = Direction.UP;
                     currentFloor++;
                     status = ElevatorState.MOVING;
+                    publishSnapshot();
                 } else if (targetFloor < currentFloor) {
                     direction = Direction.DOWN;
                     currentFloor--;
                     status = ElevatorState.MOVING;
+                    publishSnapshot();
+                }
+                
+                // Пассажиры, так и не выбравшие этаж, вышли в конце хода
+                if (previous != Direction.NONE && direction != previous) {
+                    passengers = knownRiders();
+                    publishSnapshot();
                 }
                 
                 if (status == ElevatorState.MOVING) {
-                    logToGUI(getName() + " едет " + direction + " на этаж " + currentFloor);
+                    log(LogLevel.DEBUG, getName() + " едет " + direction + " на этаж " + currentFloor);
                 }
             }
         } finally {
@@ -77,178 +320,634 @@ public class Elevator extends Thread {
     }
     
     public List<Integer> getTargetFloors() {
-        lock.lock();
-        try {
-            return new ArrayList<>(targetFloors);
-        } finally {
-            lock.unlock();
+        List<Integer> floors = new ArrayList<>();
+        for (int floor : snapshot.getTargets()) {
+            floors.add(floor);
         }
+        return floors;
     }
 
-    // Проверка прибытия и обработка дверей
-    private void checkArrival() {
-        boolean arrived = false;
+    // Проверка прибытия: при совпадении этажа с целью начинается открытие дверей
+    private boolean checkArrival() {
+        int movers = serveCurrentFloor(ElevatorState.DOORS_OPENING);
+        if (movers < 0) return false;
+        dwellMs = dwellFor(movers);
+        stopDwellMs = dwellMs;
+        log(LogLevel.INFO, getName() + " прибыл на этаж " + currentFloor + ". Открывает двери.");
+        return true;
+    }
+    
+    // Обслуживание текущего этажа, если лифт на нём останавливается: высадка, посадка, снятие вызова
+    // в сторону дальнейшего хода; лифт переходит в doorState. Возвращает число входящих и выходящих,
+    // -1 - лифт здесь не останавливается или полный лифт проехал этаж
+    private int serveCurrentFloor(ElevatorState doorState) {
+        int movers = -1;
+        Direction departing = Direction.NONE;
+        List<Request> completed = null;
+        List<Request> boarded = null;
+        List<Request> transferred = null;
+        boolean bypassed = false;
         lock.lock();
         try {
-            if (targetFloors.contains(currentFloor)) {
+            if (stopsAt(currentFloor)) {
                 targetFloors.remove(currentFloor);
-                arrived = true;
-                status = ElevatorState.DOORS_OPENING; 
+                if (isFull() && alightingAt(currentFloor) == 0 && !hasCarCall(currentFloor)) {
+                    // Полный лифт проезжает этаж, где только посадка; вызов остаётся за лифтом до освобождения мест
+                    deferredPickups.add(currentFloor);
+                    publishSnapshot();
+                    bypassed = true;
+                } else {
+                    completed = carCalls.remove(currentFloor);
+                    transferred = transferRiders.remove(currentFloor);
+                    movers = takeAlighting(currentFloor);
+                    passengers -= movers;
+                    departing = departingDirection(currentFloor);
+                    if (direction != Direction.NONE && departing != direction) {
+                        // Разворот: пассажиры, так и не выбравшие этаж, выходят в конце хода
+                        passengers = knownRiders();
+                    }
+                    direction = departing;
+                    deferredPickups.remove(currentFloor);
+                    releaseDeferredPickups();
+                    boarded = boardWaitingPassengers(currentFloor);
+                    if (boarded != null) {
+                        movers += boarded.size();
+                    }
+                    if (hallStops(departing).remove(currentFloor) && !isFull()) {
+                        passengers++;
+                        movers++;
+                    }
+                    // Вызов в обратную сторону остаётся целью: лифт заберёт его после разворота
+                    if (hallStops(opposite(departing)).contains(currentFloor)) {
+                        targetFloors.add(currentFloor);
+                    }
+                    status = doorState;
+                    publishSnapshot();
+                }
             }
         } finally {
             lock.unlock(); 
         }
         
-        if (arrived) {
-            logToGUI(getName() + " прибыл на этаж " + currentFloor + ". Открывает двери.");
-            
-            try {
-                Thread.sleep(1000);  
-                
-                lock.lock();
-                try {
-                    status = ElevatorState.LOADING;
-                } finally {
-                    lock.unlock();
+        if (bypassed) {
+            log(LogLevel.DEBUG, getName() + " заполнен, проезжает этаж " + currentFloor);
+        }
+        if (movers >= 0 && system != null) {
+            EventJournal journal = system.getJournal();
+            if (journal != null) {
+                journal.carArrived(id, currentFloor, system.getClock().now());
+            }
+            system.getDispatcher().onElevatorArrived(this, currentFloor, departing);
+            if (completed != null) {
+                long now = system.getClock().now();
+                for (Request request : completed) {
+                    request.markCompleted(now);
+                    system.getMetrics().recordJourneyCompleted(request.getJourneyTime());
                 }
-                
-                logToGUI(getName() + " посадка/высадка");
-                Thread.sleep(1500);
-                
-                lock.lock();
-                try {
-                    status = ElevatorState.DOORS_CLOSING;
-                } finally {
-                    lock.unlock();
+            }
+            if (transferred != null) {
+                for (Request request : transferred) {
+                    system.getDispatcher().onTransferReached(this, request);
                 }
-                
-                logToGUI(getName() + " закрывает двери");
-                Thread.sleep(1000);
-                
-                lock.lock();
-                try {
-                    status = targetFloors.isEmpty() ? 
-                            ElevatorState.IDLE : ElevatorState.MOVING;
-                } finally {
-                    lock.unlock();
+            }
+            if (boarded != null) {
+                for (Request request : boarded) {
+                    system.getDispatcher().onDestinationBoarded(this, request);
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
             }
         }
+        return movers;
     }
-
-    public boolean addRequestWithTimeout(Request request, long timeout, TimeUnit unit) {
-        try {
-            return requestQueue.offer(request, timeout, unit);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
+    
+    // Стоянка по числу входящих и выходящих: пустая остановка закрывается раньше номинальной.
+    // Ею же EtaModel оценивает стоянки на маршруте
+    static long dwellFor(int movers) {
+        return Math.min(MAX_DWELL_MS, MIN_DWELL_MS + movers * TRANSFER_MS);
+    }
+    
+    // Продление стоянки для пассажиров, пришедших при открытых дверях, - в пределах MAX_DWELL_MS на остановку
+    private long extendDwell(int movers) {
+        long extra = Math.min(Math.max(1, movers) * TRANSFER_MS, MAX_DWELL_MS - stopDwellMs);
+        stopDwellMs += extra;
+        return extra;
+    }
+    
+    private long nextClosingSlice() {
+        long slice = Math.min(DOOR_SLICE_MS, DOORS_CLOSING_MS - closingElapsedMs);
+        closingElapsedMs += slice;
+        return slice;
+    }
+    
+    // Посадка назначенных пассажиров: их цели становятся остановками кабины; вызывается под lock
+    // Не поместившиеся остаются ждать: этаж снова станет целью на следующей остановке
+    private List<Request> boardWaitingPassengers(int floor) {
+        List<Request> waiting = waitingPassengers.get(floor);
+        if (waiting == null) return null;
+        int seats = Math.min(CAPACITY - passengers, waiting.size());
+        if (seats <= 0) {
+            deferredPickups.add(floor);
+            return null;
+        }
+        List<Request> boarded = new ArrayList<>(waiting.subList(0, seats));
+        waiting.subList(0, seats).clear();
+        if (waiting.isEmpty()) {
+            waitingPassengers.remove(floor);
+        } else {
+            deferredPickups.add(floor);
         }
+        for (Request request : boarded) {
+            targetFloors.add(request.getTargetFloor());
+            if (request.getOnwardFloor() >= 0) {
+                transferRiders.computeIfAbsent(request.getTargetFloor(), key -> new ArrayList<>()).add(request);
+            } else {
+                carCalls.computeIfAbsent(request.getTargetFloor(), key -> new ArrayList<>()).add(request);
+            }
+            addAlighting(request.getTargetFloor());
+        }
+        passengers += seats;
+        waitingCount -= seats;
+        rebuildDestinations();
+        return boarded;
     }
-
-    private int getNextTarget() {
+    
+    // Пропущенные этажи посадки снова становятся целями (текущий - только если есть места); вызывается под lock
+    private void releaseDeferredPickups() {
+        for (int floor = deferredPickups.nextAtOrAbove(1); floor != -1; floor = deferredPickups.nextAtOrAbove(floor + 1)) {
+            if (floor == currentFloor && isFull()) continue;
+            targetFloors.add(floor);
+            deferredPickups.remove(floor);
+        }
+    }
+    
+    // Останавливается ли лифт на этаже при текущем направлении: этаж, где ждут только в обратную сторону,
+    // он проезжает, пока дальше по ходу есть цели; вызывается под lock
+    private boolean stopsAt(int floor) {
+        if (!targetFloors.contains(floor)) return false;
+        if (direction == Direction.NONE || !hallStops(opposite(direction)).contains(floor)) return true;
+        if (hallStops(direction).contains(floor) || hasCarCall(floor) || alightingAt(floor) > 0
+                || waitingPassengers.containsKey(floor)) return true;
+        return !hasTargetBeyond(floor, direction);
+    }
+    
+    // Куда лифт уйдёт с этажа: дальше по ходу, если там цели или здесь ждут в ту же сторону, иначе разворот.
+    // Стоящий лифт забирает вызов вверх, если только цели не лежат все ниже; вызывается под lock
+    private Direction departingDirection(int floor) {
+        if (direction != Direction.NONE) {
+            if (hallStops(direction).contains(floor) || hasTargetBeyond(floor, direction)) return direction;
+            Direction back = opposite(direction);
+            return hallStops(back).contains(floor) || hasTargetBeyond(floor, back) ? back : direction;
+        }
+        boolean up = hallStopsUp.contains(floor);
+        boolean down = hallStopsDown.contains(floor);
+        if (up && down) {
+            return hasTargetBeyond(floor, Direction.DOWN) && !hasTargetBeyond(floor, Direction.UP) ? Direction.DOWN : Direction.UP;
+        }
+        if (up || down) return up ? Direction.UP : Direction.DOWN;
+        if (hasTargetBeyond(floor, Direction.UP)) return Direction.UP;
+        return hasTargetBeyond(floor, Direction.DOWN) ? Direction.DOWN : Direction.NONE;
+    }
+    
+    private boolean hasTargetBeyond(int floor, Direction towards) {
+        return towards == Direction.UP ? targetFloors.nextAtOrAbove(floor + 1) != -1 : targetFloors.nextAtOrBelow(floor - 1) != -1;
+    }
+    
+    private FloorSet hallStops(Direction callDirection) {
+        return callDirection == Direction.DOWN ? hallStopsDown : hallStopsUp;
+    }
+    
+    private static Direction opposite(Direction towards) {
+        return towards == Direction.UP ? Direction.DOWN : towards == Direction.DOWN ? Direction.UP : Direction.NONE;
+    }
+    
+    private boolean isFull() {
+        return passengers >= CAPACITY;
+    }
+    
+    private int alightingAt(int floor) {
+        return floor < alightAt.length ? alightAt[floor] : 0;
+    }
+    
+    private int takeAlighting(int floor) {
+        if (floor >= alightAt.length) return 0;
+        int count = alightAt[floor];
+        alightAt[floor] = 0;
+        return count;
+    }
+    
+    private boolean hasCarCall(int floor) {
+        return carCalls.containsKey(floor);
+    }
+    
+    private void addAlighting(int floor) {
+        if (floor >= alightAt.length) {
+            alightAt = Arrays.copyOf(alightAt, Math.max(floor + 1, alightAt.length * 2));
+        }
+        alightAt[floor]++;
+    }
+    
+    private int knownRiders() {
+        int riders = 0;
+        for (int count : alightAt) {
+            riders += count;
+        }
+        return riders;
+    }
+    
+    private void rebuildDestinations() {
+        destinations.clear();
+        for (List<Request> requests : waitingPassengers.values()) {
+            for (Request request : requests) {
+                destinations.add(request.getTargetFloor());
+            }
+        }
+    }
+    
+    // Предварительная парковка простаивающего лифта на этаже ожидаемого спроса; false - очередь заполнена
+    public boolean park(int floor) {
+        return enqueue(Request.pack(RequestType.PARK, floor, Direction.NONE, 0));
+    }
+    
+    // Парковка принимается, только если лифт всё ещё свободен; любая цель её отменяет; вызывается под lock
+    private void acceptParking(int floor) {
+        if (status == ElevatorState.IDLE && targetFloors.isEmpty() && waitingCount == 0
+                && floor != currentFloor && serves(floor)) {
+            parkingFloor = floor;
+            acceptedChanges = true;
+            if (isLogEnabled(LogLevel.INFO)) {
+                log(LogLevel.INFO, getName() + " паркуется на этаже " + floor);
+            }
+        }
+    }
+    
+    // Пассажир режима выбора этажа: этаж посадки и его цель попадают в снимок сразу, под lock,
+    // чтобы следующий вызов, оцениваемый диспетчером, уже учитывал группировку по целям.
+    // Постановка в очередь - под тем же lock: при заполненной очереди пассажир снимается до публикации
+    // снимка, и решение остаётся за политикой диспетчера. false - очередь заполнена, пассажир не принят
+    public boolean addDestinationRequest(Request request) {
         lock.lock();
         try {
-            if (targetFloors.isEmpty()) return currentFloor;
-            
-            if (direction == Direction.UP) {
-                for (int floor : targetFloors) {
-                    if (floor >= currentFloor) {  
-                        return floor;
-                    }
+            boolean wasTarget = targetFloors.contains(request.getSourceFloor());
+            registerDestination(request);
+            if (!enqueue(Request.pack(RequestType.DESTINATION, request.getSourceFloor(), request.getDirection(), request.getCreatedAt()))) {
+                List<Request> waiting = waitingPassengers.get(request.getSourceFloor());
+                waiting.remove(waiting.size() - 1);
+                if (waiting.isEmpty()) {
+                    waitingPassengers.remove(request.getSourceFloor());
                 }
-                return Collections.max(targetFloors);
-            } else if (direction == Direction.DOWN) {
-                for (int floor : targetFloors) {
-                    if (floor <= currentFloor) { 
-                        return floor;
-                    }
+                waitingCount--;
+                rebuildDestinations();
+                if (!wasTarget) {
+                    targetFloors.remove(request.getSourceFloor());
                 }
-                return Collections.min(targetFloors);
-            } else {
-                int closest = currentFloor;
-                int minDiff = Integer.MAX_VALUE;
-                for (int floor : targetFloors) {
-                    int diff = Math.abs(floor - currentFloor);
-                    if (diff < minDiff) {
-                        minDiff = diff;
-                        closest = floor;
-                    }
-                }
-                return closest;
+                return false;
             }
+            publishSnapshot();
+            return true;
         } finally {
             lock.unlock();
         }
     }
     
-    // Обработка входящих запросов из очереди лифта
-    private void processRequests() throws InterruptedException {
-        Request request = requestQueue.poll(100, TimeUnit.MILLISECONDS);
-        if (request != null) {
-            lock.lock();
-            try {
-                if (request.getType() == RequestType.EXTERNAL) {
-                    targetFloors.add(request.getSourceFloor());
-                    logToGUI(getName() + " получил вызов на этаж " + request.getSourceFloor());
-                } else {
-                    targetFloors.add(request.getTargetFloor());
-                    logToGUI(getName() + " цель внутри: этаж " + request.getTargetFloor());
-                }
-            } finally {
-                lock.unlock();
-            }
+    // Переполнение очереди при политике COALESCE: запись в очереди только будит лифт,
+    // поэтому пассажир регистрируется напрямую, а лифт будится без очереди
+    public void coalesceDestinationRequest(Request request) {
+        lock.lock();
+        try {
+            registerDestination(request);
+            publishSnapshot();
+        } finally {
+            lock.unlock();
         }
+        wakeUp();
     }
     
-    private void logToGUI(String message) {
-        System.out.println(message);
-        if (system != null && system.getGUI() != null) {
-            system.getGUI().addLog(message);
-        }
+    private void registerDestination(Request request) {
+        waitingPassengers.computeIfAbsent(request.getSourceFloor(), floor -> new ArrayList<>()).add(request);
+        waitingCount++;
+        destinations.add(request.getTargetFloor());
+        targetFloors.add(request.getSourceFloor());
     }
     
-    public void addRequest(Request request) {
-        requestQueue.offer(request);
+    // Снятие назначенного вызова с этажа перед переназначением другому лифту (под lock).
+    // false - вызова нет среди целей (ещё в очереди), лифт уже стоит на этаже или остановится там
+    // всё равно (цель из кабины, высадка, посадка пассажиров режима выбора этажа): тогда он и заберёт
+    // пассажира, а переназначение дало бы второму лифту пустой рейс
+    public boolean revokeHallCall(int floor, Direction callDirection) {
+        lock.lock();
+        try {
+            FloorSet calls = hallStops(callDirection);
+            if (!calls.contains(floor)) return false;
+            if (floor == currentFloor && status != ElevatorState.MOVING && status != ElevatorState.IDLE) return false;
+            if (hasCarCall(floor) || alightingAt(floor) > 0 || waitingPassengers.containsKey(floor)) return false;
+            calls.remove(floor);
+            if (!hallStops(opposite(callDirection)).contains(floor)) {
+                targetFloors.remove(floor);
+                deferredPickups.remove(floor);
+            }
+            publishSnapshot();
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
     
-    public int getCurrentFloor() {
+    // Каждое нажатие - отдельный пассажир: повторные нажатия на тот же этаж тоже дают свою поездку
+    private void rememberCarCall(int floor, long createdAt) {
+        Request request = new Request(floor, id);
+        request.markCreated(createdAt);
+        carCalls.computeIfAbsent(floor, key -> new ArrayList<>()).add(request);
+    }
+
+    private void setStatus(ElevatorState newStatus) {
         lock.lock();
         try {
-            return currentFloor;
+            status = newStatus;
+            publishSnapshot();
         } finally {
             lock.unlock();
         }
     }
-    
-    public Direction getDirection() {
+
+    private ElevatorState currentStatus() {
         lock.lock();
         try {
-            return direction;
+            return status;
         } finally {
             lock.unlock();
         }
     }
+
+    // Публикация нового снимка; вызывается под lock после каждого изменения состояния
+    private void publishSnapshot() {
+        snapshot = new ElevatorSnapshot(id, ++version, currentFloor, direction, status,
+                targetFloors.copy(), destinations.copy(), waitingCount, passengers, CAPACITY, parkingFloor);
+        Consumer<ElevatorSnapshot> listener = snapshotListener;
+        if (listener != null) {
+            listener.accept(snapshot);
+        }
+    }
+
+    // Вызов с этажа от диспетчера. false - очередь лифта заполнена, решение за политикой диспетчера
+    public boolean addHallCall(int floor, Direction callDirection) {
+        return enqueue(Request.pack(RequestType.EXTERNAL, floor, callDirection, 0));
+    }
     
-    public ElevatorState getElevatorState() {
+    // Цель из кабины; createdAt - время нажатия по часам системы. false - очередь лифта заполнена
+    public boolean addCarCall(int floor, long createdAt) {
+        return enqueue(Request.pack(RequestType.INTERNAL, floor, Direction.NONE, createdAt));
+    }
+    
+    // Переполнение очереди при политике COALESCE: вызов сливается с ожидающими по этажу
+    // и забирается при следующем разборе очереди; повторные нажатия одного этажа схлопываются
+    public void coalesceHallCall(int floor, Direction callDirection) {
+        coalesce(floor * 3 + (callDirection == Direction.DOWN ? 1 : 0), 0);
+    }
+    
+    public void coalesceCarCall(int floor, long createdAt) {
+        coalesce(floor * 3 + 2, createdAt);
+    }
+    
+    private void coalesce(int slot, long createdAt) {
+        coalesced.compareAndSet(slot, 0, Math.max(0, createdAt) + 1);
+        hasCoalesced.set(true);
+        wakeUp();
+    }
+    
+    private boolean hasPendingRequests() {
+        return !requestQueue.isEmpty() || hasCoalesced.get();
+    }
+
+    // Следующая цель по битовой карте: ближайшая по ходу движения, иначе крайняя в обратную сторону
+    private int getNextTarget() {
         lock.lock();
         try {
-            return status;
+            if (targetFloors.isEmpty()) return currentFloor;
+            
+            // Текущий этаж, где ждут только в обратную сторону, - не цель этого хода
+            int from = stopsAt(currentFloor) ? currentFloor : currentFloor + (direction == Direction.DOWN ? -1 : 1);
+            if (direction == Direction.UP) {
+                int above = targetFloors.nextAtOrAbove(from);
+                return above != -1 ? above : targetFloors.max();
+            } else if (direction == Direction.DOWN) {
+                int below = targetFloors.nextAtOrBelow(from);
+                return below != -1 ? below : targetFloors.min();
+            } else {
+                int above = targetFloors.nextAtOrAbove(currentFloor);
+                int below = targetFloors.nextAtOrBelow(currentFloor);
+                if (above == -1) return below;
+                if (below == -1) return above;
+                return currentFloor - below <= above - currentFloor ? below : above;
+            }
         } finally {
             lock.unlock();
         }
     }
     
-    public String getTargetsString() {
+    // Обработка всех запросов, накопившихся в очереди лифта, под одним захватом lock
+    // и с одной публикацией снимка на пачку. Возвращает число принятых запросов
+    private int processRequests() {
+        if (!hasPendingRequests()) return 0;
         lock.lock();
         try {
-            return targetFloors.toString();
+            acceptedChanges = false;
+            int accepted = requestQueue.drain(acceptor);
+            if (hasCoalesced.getAndSet(false)) {
+                accepted += takeCoalesced();
+            }
+            if (acceptedChanges) {
+                publishSnapshot();
+            }
+            return accepted;
         } finally {
             lock.unlock();
         }
     }
     
+    // Принятая цель кабины - в журнал вызовов; вызывается под lock, журнал с лифтами не блокируется
+    private void journalCarTarget(int floor, long createdAt) {
+        EventJournal journal = system != null ? system.getJournal() : null;
+        if (journal != null) {
+            journal.carTarget(id, floor, createdAt);
+        }
+    }
+    
+    // Слитые при переполнении вызовы принимаются как обычные; вызывается под lock
+    private int takeCoalesced() {
+        int taken = 0;
+        for (int slot = 0; slot < coalesced.length(); slot++) {
+            if (coalesced.get(slot) == 0) continue;
+            long createdAt = coalesced.getAndSet(slot, 0) - 1;
+            int kind = slot % 3;
+            applyRequest(kind == 2 ? RequestType.INTERNAL : RequestType.EXTERNAL, slot / 3,
+                    kind == 1 ? Direction.DOWN : kind == 0 ? Direction.UP : Direction.NONE, createdAt);
+            taken++;
+        }
+        return taken;
+    }
+    
+    // Приём одного упакованного запроса; вызывается под lock из processRequests
+    private void acceptRequest(long packed, long enqueuedAtNanos) {
+        applyRequest(Request.packedType(packed), Request.packedFloor(packed), Request.packedDirection(packed), Request.packedCreatedAt(packed));
+        recordAcceptLatency(System.nanoTime() - enqueuedAtNanos);
+    }
+    
+    private void applyRequest(RequestType type, int floor, Direction callDirection, long createdAt) {
+        switch (type) {
+            case PARK:
+                acceptParking(floor);
+                break;
+            case DESTINATION:
+                // Этаж посадки уже добавлен в addDestinationRequest, очередь только будит лифт
+                if (isLogEnabled(LogLevel.INFO)) {
+                    log(LogLevel.INFO, getName() + " заберёт пассажира с этажа " + floor);
+                }
+                break;
+            case EXTERNAL:
+                targetFloors.add(floor);
+                hallStops(callDirection).add(floor);
+                acceptedChanges = true;
+                if (isLogEnabled(LogLevel.INFO)) {
+                    log(LogLevel.INFO, getName() + " получил вызов на этаж " + floor + " (" + callDirection + ")");
+                }
+                break;
+            default:
+                // Кнопка этажа, на котором лифт стоит с дверями в работе, ничего не даёт: пассажир уже здесь.
+                // Иначе зажатая кнопка держала бы лифт на этаже остановка за остановкой
+                if (floor == currentFloor && status != ElevatorState.MOVING && status != ElevatorState.IDLE) {
+                    if (isLogEnabled(LogLevel.DEBUG)) {
+                        log(LogLevel.DEBUG, getName() + " игнорирует цель внутри: лифт уже на этаже " + floor);
+                    }
+                    break;
+                }
+                targetFloors.add(floor);
+                rememberCarCall(floor, createdAt);
+                journalCarTarget(floor, createdAt);
+                // Кнопку нажал севший по вызову с этажа, ещё не выбравший этаж: теперь известно, где он выйдет
+                if (passengers > knownRiders()) {
+                    addAlighting(floor);
+                }
+                acceptedChanges = true;
+                if (isLogEnabled(LogLevel.INFO)) {
+                    log(LogLevel.INFO, getName() + " цель внутри: этаж " + floor);
+                }
+                break;
+        }
+    }
+    
+    // Задержка от постановки в очередь до принятия в цели; пишет только поток, исполняющий лифт
+    private void recordAcceptLatency(long nanos) {
+        acceptedRequests++;
+        acceptLatencyTotalNanos += nanos;
+        if (nanos > acceptLatencyMaxNanos) {
+            acceptLatencyMaxNanos = nanos;
+        }
+    }
+    
+    public boolean serves(int floor) {
+        return servedFloors == null || servedFloors.contains(floor);
+    }
+    
+    public int getQueueDepth() {
+        return requestQueue.size();
+    }
+    
+    public long getAcceptedRequests() {
+        return acceptedRequests;
+    }
+    
+    public double getAverageAcceptLatencyMicros() {
+        long count = acceptedRequests;
+        return count == 0 ? 0 : acceptLatencyTotalNanos / 1000.0 / count;
+    }
+    
+    public double getMaxAcceptLatencyMicros() {
+        return acceptLatencyMaxNanos / 1000.0;
+    }
+    
+    private void log(LogLevel level, String message) {
+        if (system != null) {
+            system.log(level, message);
+        } else {
+            System.out.println(message);
+        }
+    }
+    
+    private boolean isLogEnabled(LogLevel level) {
+        return system == null || system.isLogEnabled(level);
+    }
+    
+    // Запрос-объект (внешний код, бенчмарк) кладётся в очередь упакованным. При заполненной очереди
+    // решает политика переполнения диспетчера системы; false - запрос не принят.
+    // Лифт принимает только вызовы и цели кабины: назначение по этажу идёт через диспетчер,
+    // который регистрирует пассажира, иначе запрос «принят», а пассажира нигде нет
+    public boolean addRequest(Request request) {
+        RequestType type = request.getType();
+        if (type != RequestType.EXTERNAL && type != RequestType.INTERNAL) {
+            log(LogLevel.WARN, getName() + ": запрос типа " + type + " не принимается напрямую");
+            return false;
+        }
+        // Вызов с этажа без направления лифт не знал бы, забирать ли его по ходу
+        if (type == RequestType.EXTERNAL && request.getDirection() != Direction.UP && request.getDirection() != Direction.DOWN) {
+            log(LogLevel.WARN, getName() + ": вызов с этажа " + request.getSourceFloor() + " без направления не принимается");
+            return false;
+        }
+        // Без отметки времени путь считался бы от нуля часов системы
+        if (request.getCreatedAt() < 0 && system != null) {
+            request.markCreated(system.getClock().now());
+        }
+        int floor = type == RequestType.EXTERNAL ? request.getSourceFloor() : request.getTargetFloor();
+        if (enqueue(Request.pack(type, floor, request.getDirection(), request.getCreatedAt()))) return true;
+        return system != null && system.getDispatcher().onQueueFull(this, type, floor, request.getDirection(), request.getCreatedAt());
+    }
+    
+    private boolean enqueue(long packed) {
+        if (!requestQueue.offer(packed, System.nanoTime())) return false;
+        wakeUp();
+        return true;
+    }
+    
+    // Будит лифт: поток лифта - из LockSupport.park, запаркованный на планировщике - через wakeupHandler
+    private void wakeUp() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        Runnable handler = wakeupHandler;
+        if (handler != null && parked.compareAndSet(true, false)) {
+            handler.run();
+            return;
+        }
+        Runnable drain = drainHandler;
+        if (drain != null && drainScheduled.compareAndSet(false, true)) {
+            drain.run();
+        }
+    }
+    
+    // Чтение через снимок: без блокировки и без конкуренции с потоком лифта
+    public ElevatorSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public int getCurrentFloor() {
+        return snapshot.getCurrentFloor();
+    }
+    
+    public Direction getDirection() {
+        return snapshot.getDirection();
+    }
+    
+    public ElevatorState getElevatorState() {
+        return snapshot.getState();
+    }
+    
+    public String getTargetsString() {
+        return snapshot.getTargetsString();
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
     public int getIdNum() {
         return id;
     }
@@ -1,6 +1,5 @@
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.util.List;
 import java.util.Random;
@@ -10,9 +9,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ElevatorGUI extends JFrame {
+    private static final int MAX_LOG_LINES = 1000;
+    
     private final ElevatorSystem system;
     private JTable elevatorTable;
-    private DefaultTableModel tableModel;
+    private ElevatorTableModel tableModel;
     private JTextArea logArea;
     private ScheduledExecutorService scheduler;
     
@@ -31,7 +32,7 @@ public class ElevatorGUI extends JFrame {
     public ElevatorGUI(ElevatorSystem system) {
         this.system = system;
         
-        setTitle("Лифты - " + BuildingConfig.FLOORS + " этажей");
+        setTitle("Лифты - " + system.getConfig().getFloors() + " этажей");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); 
         addWindowListener(new java.awt.event.WindowAdapter() {
             @Override
@@ -74,13 +75,7 @@ public class ElevatorGUI extends JFrame {
     }
     
     private void initComponents() {
-        String[] columns = {"ID", "Этаж", "Направление", "Статус", "Цели"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new ElevatorTableModel(system.getElevators());
         elevatorTable = new JTable(tableModel);
         elevatorTable.setBackground(new Color(63, 63, 70));
         elevatorTable.setForeground(Color.WHITE);
@@ -92,14 +87,14 @@ public class ElevatorGUI extends JFrame {
         
         callDirectionCombo = new JComboBox<>(new Direction[]{Direction.UP, Direction.DOWN});
         
-        Integer[] elevatorIds = new Integer[BuildingConfig.ELEVATORS_COUNT];
+        Integer[] elevatorIds = new Integer[system.getElevators().size()];
         for (int i = 0; i < elevatorIds.length; i++) {
             elevatorIds[i] = i;
         }
         elevatorIdCombo = new JComboBox<>(elevatorIds);
         
-        callFloorSpinner = new JSpinner(new SpinnerNumberModel(1, 1, BuildingConfig.FLOORS, 1));
-        internalFloorSpinner = new JSpinner(new SpinnerNumberModel(1, 1, BuildingConfig.FLOORS, 1));
+        callFloorSpinner = new JSpinner(new SpinnerNumberModel(1, 1, system.getConfig().getFloors(), 1));
+        internalFloorSpinner = new JSpinner(new SpinnerNumberModel(1, 1, system.getConfig().getFloors(), 1));
 
         statsLabel = new JLabel("Запросов: 0");
         statsLabel.setForeground(Color.WHITE);
@@ -119,10 +114,6 @@ public class ElevatorGUI extends JFrame {
         elevatorTable.getColumnModel().getColumn(3).setPreferredWidth(120);
         elevatorTable.getColumnModel().getColumn(4).setPreferredWidth(200);
         
-        for (int i = 0; i < BuildingConfig.ELEVATORS_COUNT; i++) {
-            tableModel.addRow(new Object[]{i, "1", "NONE", "IDLE", "[]"});
-        }
-        
         panel.add(new JScrollPane(elevatorTable), BorderLayout.CENTER);
         
         return panel;
@@ -287,13 +278,13 @@ public class ElevatorGUI extends JFrame {
             try {
                 while (randomGenerationActive && !Thread.currentThread().isInterrupted()) {
                     if (random.nextBoolean()) {
-                        int floor = random.nextInt(BuildingConfig.FLOORS) + 1;
+                        int floor = random.nextInt(system.getConfig().getFloors()) + 1;
                         Direction dir = random.nextBoolean() ? Direction.UP : Direction.DOWN;
                         system.getDispatcher().addExternalRequest(floor, dir);
                         totalRequests.incrementAndGet();
                     } else {
-                        int id = random.nextInt(BuildingConfig.ELEVATORS_COUNT);
-                        int floor = random.nextInt(BuildingConfig.FLOORS) + 1;
+                        int id = random.nextInt(system.getElevators().size());
+                        int floor = random.nextInt(system.getConfig().getFloors()) + 1;
                         system.getDispatcher().addInternalRequest(floor, id);
                         totalRequests.incrementAndGet();
                     }
@@ -309,9 +300,16 @@ public class ElevatorGUI extends JFrame {
     }
     
     private void updateStats() {
-        SwingUtilities.invokeLater(() -> {
-            statsLabel.setText("Запросов: " + totalRequests.get());
-        });
+        SwingUtilities.invokeLater(this::refreshStatsLabel);
+    }
+    
+    // Текст метки меняется только при новых данных, иначе Swing перерисовывает её впустую
+    private void refreshStatsLabel() {
+        String text = "Запросов: " + totalRequests.get()
+                + " | потеряно логов: " + system.getLogPipeline().getDroppedCount();
+        if (!text.equals(statsLabel.getText())) {
+            statsLabel.setText(text);
+        }
     }
     
     private void startAutoRefresh() {
@@ -319,28 +317,34 @@ public class ElevatorGUI extends JFrame {
         scheduler.scheduleAtFixedRate(this::updateStatus, 0, 500, TimeUnit.MILLISECONDS);
     }
     
+    // Одна задача в EDT на тик: модель сверяет версии снимков и обновляет только изменившиеся строки
     private void updateStatus() {
         SwingUtilities.invokeLater(() -> {
-            if (system == null) return;
-            
-            List<Elevator> elevators = system.getElevators();
-            if (elevators == null) return;
-            
-            for (int i = 0; i < elevators.size(); i++) {
-                Elevator elevator = elevators.get(i);
-                tableModel.setValueAt(elevator.getIdNum(), i, 0);
-                tableModel.setValueAt(elevator.getCurrentFloor(), i, 1);
-                tableModel.setValueAt(elevator.getDirection(), i, 2);
-                tableModel.setValueAt(elevator.getElevatorState(), i, 3);
-                tableModel.setValueAt(elevator.getTargetsString(), i, 4);
-            }
+            refreshStatsLabel();
+            tableModel.refresh();
         });
     }
     
     public void addLog(String message) {
+        system.log(LogLevel.INFO, message);
+    }
+    
+    // Пачка строк от LogPipeline: одно обновление EDT, история обрезается до MAX_LOG_LINES
+    public void appendLogBatch(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
         SwingUtilities.invokeLater(() -> {
-            String time = String.format("[%tT]", new java.util.Date());
-            logArea.append(time + " " + message + "\n");
+            logArea.append(text.toString());
+            int excess = logArea.getLineCount() - 1 - MAX_LOG_LINES;
+            if (excess > 0) {
+                try {
+                    logArea.replaceRange("", 0, logArea.getLineStartOffset(excess));
+                } catch (javax.swing.text.BadLocationException e) {
+                    logArea.setText("");
+                }
+            }
             logArea.setCaretPosition(logArea.getDocument().getLength());
         });
     }
@@ -0,0 +1,57 @@
+// Группа лифтов с общей зоной обслуживания: диапазон этажей (зонирование),
+// отдельные этажи (экспресс, пропускающий остальные) или их сочетание с лобби
+public class ElevatorGroup {
+    private final String name;
+    private final int carCount;
+    private final FloorSet servedFloors;
+
+    public ElevatorGroup(String name, int carCount, FloorSet servedFloors) {
+        if (carCount < 1 || servedFloors.size() < 2) {
+            throw new IllegalArgumentException("Группа " + name + " должна иметь лифты и минимум два этажа");
+        }
+        this.name = name;
+        this.carCount = carCount;
+        this.servedFloors = servedFloors.copy();
+    }
+
+    // Зона: все этажи from..to и, дополнительно, перечисленные (например, лобби)
+    public static ElevatorGroup zone(String name, int carCount, int from, int to, int... extraFloors) {
+        FloorSet floors = new FloorSet(to);
+        for (int floor = from; floor <= to; floor++) {
+            floors.add(floor);
+        }
+        for (int floor : extraFloors) {
+            floors.add(floor);
+        }
+        return new ElevatorGroup(name, carCount, floors);
+    }
+
+    // Экспресс: останавливается только на перечисленных этажах
+    public static ElevatorGroup express(String name, int carCount, int... stops) {
+        FloorSet floors = new FloorSet();
+        for (int floor : stops) {
+            floors.add(floor);
+        }
+        return new ElevatorGroup(name, carCount, floors);
+    }
+
+    public String getName() { return name; }
+    public int getCarCount() { return carCount; }
+
+    public boolean serves(int floor) {
+        return servedFloors.contains(floor);
+    }
+
+    public int getLowestFloor() {
+        return servedFloors.min();
+    }
+
+    public int getHighestFloor() {
+        return servedFloors.max();
+    }
+
+    // Копия, чтобы лифт не мог изменить зону группы
+    public FloorSet getServedFloors() {
+        return servedFloors.copy();
+    }
+}
@@ -0,0 +1,160 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import javax.management.*;
+
+// Метрики системы: гистограммы ожидания, назначения и поездки по временным меткам вызовов
+// и датчики глубины очередей. Публикуются в JMX как elevators:type=Metrics,name=<здание>
+public class ElevatorMetrics implements ElevatorMetricsMBean {
+    private final ElevatorSystem system;
+    private final LatencyHistogram waitTimes;
+    private final LatencyHistogram assignTimes;
+    private final LatencyHistogram journeyTimes;
+    private ObjectName objectName;
+
+    public ElevatorMetrics(ElevatorSystem system) {
+        this.system = system;
+        this.waitTimes = new LatencyHistogram();
+        this.assignTimes = new LatencyHistogram();
+        this.journeyTimes = new LatencyHistogram();
+    }
+
+    // Вызов с этажа обслужен: лифт прибыл за пассажиром; assignedAt = -1 - назначение неизвестно
+    public void recordHallCallServed(long createdAt, long assignedAt, long arrivedAt) {
+        waitTimes.record(arrivedAt - createdAt);
+        if (assignedAt >= 0) {
+            assignTimes.record(assignedAt - createdAt);
+        }
+    }
+
+    // Пассажир доставлен на целевой этаж
+    public void recordJourneyCompleted(long journeyMs) {
+        journeyTimes.record(journeyMs);
+    }
+
+    public LatencyHistogram getWaitTimes() { return waitTimes; }
+    public LatencyHistogram getJourneyTimes() { return journeyTimes; }
+
+    public void register(String name) {
+        try {
+            objectName = new ObjectName("elevators:type=Metrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            system.log(LogLevel.WARN, "Не удалось зарегистрировать JMX-метрики: " + e.getMessage());
+            objectName = null;
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            system.log(LogLevel.WARN, "Не удалось снять JMX-метрики: " + e.getMessage());
+        }
+        objectName = null;
+    }
+
+    @Override public long getWaitCount() { return waitTimes.getCount(); }
+    @Override public double getWaitMeanMs() { return waitTimes.getMean(); }
+    @Override public long getWaitP50Ms() { return waitTimes.getPercentile(0.50); }
+    @Override public long getWaitP95Ms() { return waitTimes.getPercentile(0.95); }
+    @Override public long getWaitP99Ms() { return waitTimes.getPercentile(0.99); }
+    @Override public long getWaitMaxMs() { return waitTimes.getMax(); }
+
+    @Override public long getAssignP50Ms() { return assignTimes.getPercentile(0.50); }
+    @Override public long getAssignP99Ms() { return assignTimes.getPercentile(0.99); }
+    @Override public long getAssignMaxMs() { return assignTimes.getMax(); }
+
+    @Override public long getJourneyCount() { return journeyTimes.getCount(); }
+    @Override public double getJourneyMeanMs() { return journeyTimes.getMean(); }
+    @Override public long getJourneyP50Ms() { return journeyTimes.getPercentile(0.50); }
+    @Override public long getJourneyP95Ms() { return journeyTimes.getPercentile(0.95); }
+    @Override public long getJourneyP99Ms() { return journeyTimes.getPercentile(0.99); }
+    @Override public long getJourneyMaxMs() { return journeyTimes.getMax(); }
+
+    @Override
+    public int getDispatcherQueueDepth() {
+        return system.getDispatcher().getQueueDepth();
+    }
+
+    @Override
+    public int[] getElevatorQueueDepths() {
+        List<Elevator> elevators = system.getElevators();
+        int[] depths = new int[elevators.size()];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = elevators.get(i).getQueueDepth();
+        }
+        return depths;
+    }
+
+    @Override
+    public int getOutstandingHallCalls() {
+        return system.getDispatcher().getOutstandingHallCalls();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return system.getDispatcher().getOverflowPolicy().name();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return system.getDispatcher().getRejectedCount();
+    }
+
+    @Override
+    public String[] getRejectReasons() {
+        RejectReason[] reasons = RejectReason.values();
+        String[] names = new String[reasons.length];
+        for (int i = 0; i < reasons.length; i++) {
+            names[i] = reasons[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getRejections() {
+        RejectReason[] reasons = RejectReason.values();
+        long[] counts = new long[reasons.length];
+        for (int i = 0; i < reasons.length; i++) {
+            counts[i] = system.getDispatcher().getRejections(reasons[i]);
+        }
+        return counts;
+    }
+
+    @Override
+    public long getCoalescedCalls() {
+        return system.getDispatcher().getCoalescedCalls();
+    }
+
+    @Override
+    public long getReassignedCalls() {
+        return system.getDispatcher().getReassignedCalls();
+    }
+
+    // Строка для отчётов: "отклонено N (ПРИЧИНА=n, ...), слито при переполнении M, переназначено K"
+    public String rejectionSummary() {
+        StringBuilder summary = new StringBuilder("отклонено ").append(getRejectedCount());
+        String separator = " (";
+        for (RejectReason reason : RejectReason.values()) {
+            long count = system.getDispatcher().getRejections(reason);
+            if (count > 0) {
+                summary.append(separator).append(reason).append('=').append(count);
+                separator = ", ";
+            }
+        }
+        if (!separator.equals(" (")) summary.append(')');
+        return summary.append(", слито при переполнении ").append(getCoalescedCalls())
+                .append(", переназначено ").append(getReassignedCalls()).toString();
+    }
+
+    @Override
+    public void reset() {
+        waitTimes.reset();
+        assignTimes.reset();
+        journeyTimes.reset();
+    }
+}
@@ -0,0 +1,35 @@
+// JMX-интерфейс метрик системы лифтов (стандартный MBean: атрибуты - геттеры, reset - операция)
+public interface ElevatorMetricsMBean {
+    long getWaitCount();
+    double getWaitMeanMs();
+    long getWaitP50Ms();
+    long getWaitP95Ms();
+    long getWaitP99Ms();
+    long getWaitMaxMs();
+
+    long getAssignP50Ms();
+    long getAssignP99Ms();
+    long getAssignMaxMs();
+
+    long getJourneyCount();
+    double getJourneyMeanMs();
+    long getJourneyP50Ms();
+    long getJourneyP95Ms();
+    long getJourneyP99Ms();
+    long getJourneyMaxMs();
+
+    int getDispatcherQueueDepth();
+    int[] getElevatorQueueDepths();
+    int getOutstandingHallCalls();
+
+    // Отклонённые вызовы: всего и по причинам (в порядке getRejectReasons), слитые при переполнении
+    String getOverflowPolicy();
+    long getRejectedCount();
+    String[] getRejectReasons();
+    long[] getRejections();
+    long getCoalescedCalls();
+    // Вызовы с этажей, переданные другому лифту до прибытия назначенного
+    long getReassignedCalls();
+
+    void reset();
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+// Неизменяемый снимок состояния лифта. Лифт публикует новый снимок при каждом изменении,
+// поэтому диспетчер читает согласованные этаж/направление/статус/цели без блокировки.
+// Битовые карты целей и обещанных назначений - собственные копии снимка и после публикации не изменяются
+public final class ElevatorSnapshot {
+    private final int elevatorId;
+    private final long version;
+    private final int currentFloor;
+    private final Direction direction;
+    private final ElevatorState state;
+    private final FloorSet targets;
+    // Цели пассажиров, назначенных лифту в режиме выбора этажа, но ещё не севших
+    private final FloorSet destinations;
+    private final int waitingPassengers;
+    private final int passengers;
+    private final int capacity;
+    private final int parkingFloor;
+
+    public ElevatorSnapshot(int elevatorId, long version, int currentFloor, Direction direction,
+                            ElevatorState state, FloorSet targets, FloorSet destinations, int waitingPassengers,
+                            int passengers, int capacity, int parkingFloor) {
+        this.elevatorId = elevatorId;
+        this.version = version;
+        this.currentFloor = currentFloor;
+        this.direction = direction;
+        this.state = state;
+        this.targets = targets;
+        this.destinations = destinations;
+        this.waitingPassengers = waitingPassengers;
+        this.passengers = passengers;
+        this.capacity = capacity;
+        this.parkingFloor = parkingFloor;
+    }
+
+    public int getElevatorId() { return elevatorId; }
+    public long getVersion() { return version; }
+    public int getCurrentFloor() { return currentFloor; }
+    public Direction getDirection() { return direction; }
+    public ElevatorState getState() { return state; }
+    public int getWaitingPassengers() { return waitingPassengers; }
+    public int getPassengers() { return passengers; }
+    public int getCapacity() { return capacity; }
+    public int getParkingFloor() { return parkingFloor; }
+
+    public boolean isFull() {
+        return passengers >= capacity;
+    }
+
+    public boolean hasTargets() {
+        return !targets.isEmpty();
+    }
+
+    public boolean hasTarget(int floor) {
+        return targets.contains(floor);
+    }
+
+    public boolean hasDestination(int floor) {
+        return destinations.contains(floor);
+    }
+
+    public int[] getTargets() {
+        return targets.toArray();
+    }
+
+    public String getTargetsString() {
+        return targets.toString();
+    }
+}
@@ -1,73 +1,303 @@
 import java.util.*;
+import java.util.concurrent.*;
 import javax.swing.*;
 
 public class ElevatorSystem {
+    private final BuildingConfig config;
     private final List<Elevator> elevators;
     private final Dispatcher dispatcher;
+    private final Clock clock;
+    private final LogPipeline logPipeline;
+    private final ElevatorMetrics metrics;
+    private EventJournal journal;
+    private final List<Thread> elevatorThreads;
+    private ExecutionMode executionMode;
+    private ExecutorService elevatorExecutor;
+    private ScheduledExecutorService elevatorScheduler;
+    private ScheduledExecutorService sharedScheduler;
+    private volatile boolean running;
     private ElevatorGUI gui;
     
     public ElevatorSystem(int elevatorsCount) {
+        this(elevatorsCount, new SystemClock());
+    }
+    
+    public ElevatorSystem(int elevatorsCount, Clock clock) {
+        this(new BuildingConfig("building", BuildingConfig.FLOORS, elevatorsCount), clock);
+    }
+    
+    public ElevatorSystem(BuildingConfig config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+        this.logPipeline = new LogPipeline(clock);
+        this.metrics = new ElevatorMetrics(this);
         this.elevators = new ArrayList<>();
+        this.elevatorThreads = new ArrayList<>();
+        this.executionMode = parseExecutionMode(System.getProperty("elevator.mode", "THREADS"));
         
-        for (int i = 0; i < elevatorsCount; i++) {
-            Elevator elevator = new Elevator(i, i + 1, this);
-            elevators.add(elevator);
+        for (int i = 0; i < config.getElevatorsCount(); i++) {
+            ElevatorGroup group = config.getGroupOfCar(i);
+            int startFloor = i % config.getFloors() + 1;
+            if (!group.serves(startFloor)) {
+                startFloor = group.getLowestFloor();
+            }
+            elevators.add(new Elevator(i, startFloor, this));
         }
         
-        this.dispatcher = new Dispatcher(elevators);
+        this.dispatcher = new Dispatcher(elevators, config);
     }
     
     public void setGUI(ElevatorGUI gui) {
         this.gui = gui;
+        logPipeline.setGUI(gui);
+    }
+    
+    // Опечатка или строчные буквы в -Delevator.mode не роняют запуск: режим THREADS и предупреждение
+    private ExecutionMode parseExecutionMode(String value) {
+        try {
+            return ExecutionMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log(LogLevel.WARN, "Неизвестный режим исполнения " + value + ", используется THREADS");
+            return ExecutionMode.THREADS;
+        }
     }
     
     public ElevatorGUI getGUI() {
         return gui;
     }
     
+    public void log(LogLevel level, String message) {
+        logPipeline.log(level, message);
+    }
+    
+    public boolean isLogEnabled(LogLevel level) {
+        return logPipeline.isEnabled(level);
+    }
+    
+    public LogPipeline getLogPipeline() {
+        return logPipeline;
+    }
+    
+    public ElevatorMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public BuildingConfig getConfig() {
+        return config;
+    }
+    
+    // Общий планировщик (задаётся до start()): лифты, диспетчер и вывод логов здания исполняются
+    // на нём без собственных потоков. Планировщик не принадлежит системе и не останавливается в stop()
+    public void setSharedScheduler(ScheduledExecutorService sharedScheduler) {
+        this.sharedScheduler = sharedScheduler;
+        this.executionMode = ExecutionMode.SCHEDULER;
+    }
+    
+    // Журнал для восстановления после падения задаётся до start(); при запуске из него
+    // повторно подаются вызовы, не обслуженные в прошлый раз
+    public void setJournal(EventJournal journal) {
+        this.journal = journal;
+    }
+    
+    public EventJournal getJournal() {
+        return journal;
+    }
+    
+    // Режим исполнения задаётся до start()
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+    
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+    
     // Запуск диспетчера и всех лифтов
     public void start() {
         System.out.println("=== Запуск системы лифтов ===");
         
-        dispatcher.start();
+        running = true;
+        if (sharedScheduler != null) {
+            logPipeline.start(sharedScheduler);
+            dispatcher.start(sharedScheduler);
+        } else {
+            logPipeline.start();
+            dispatcher.start();
+        }
+        metrics.register(config.getName());
+        if (journal != null) {
+            if (sharedScheduler != null) {
+                journal.start(sharedScheduler);
+            } else {
+                journal.start();
+            }
+            recoverFromJournal();
+        }
         
-        for (Elevator elevator : elevators) {
-            elevator.start();
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            elevatorExecutor = newVirtualThreadExecutor();
+            if (elevatorExecutor == null) {
+                log(LogLevel.WARN, "Виртуальные потоки недоступны в этой JVM, используются обычные потоки");
+                executionMode = ExecutionMode.THREADS;
+            }
         }
         
-        if (gui != null) {
-            gui.addLog("Система запущена с " + elevators.size() + " лифтами");
+        switch (executionMode) {
+            case VIRTUAL_THREADS:
+                for (Elevator elevator : elevators) {
+                    elevatorExecutor.execute(elevator);
+                }
+                break;
+            case SCHEDULER:
+                elevatorScheduler = sharedScheduler != null ? sharedScheduler : Executors.newScheduledThreadPool(
+                        Math.max(1, Runtime.getRuntime().availableProcessors()), r -> {
+                            Thread thread = new Thread(r, "ElevatorScheduler");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+                for (Elevator elevator : elevators) {
+                    elevator.announceStart();
+                    elevator.setWakeupHandler(() -> scheduleStep(elevator, 0));
+                    elevator.setDrainHandler(() -> scheduleDrain(elevator));
+                    scheduleStep(elevator, 0);
+                }
+                break;
+            default:
+                for (Elevator elevator : elevators) {
+                    Thread thread = new Thread(elevator, elevator.getName());
+                    elevatorThreads.add(thread);
+                    thread.start();
+                }
         }
         
-        System.out.println("Система запущена с " + elevators.size() + " лифтами");
+        log(LogLevel.INFO, "Система запущена с " + elevators.size() + " лифтами (" + executionMode + ")");
+    }
+    
+    private void recoverFromJournal() {
+        long started = System.nanoTime();
+        EventJournal.Recovery recovery = journal.takeRecovery();
+        for (int[] call : recovery.getHallCalls()) {
+            dispatcher.addExternalRequest(call[0], call[1] == 1 ? Direction.DOWN : Direction.UP);
+        }
+        for (int[] target : recovery.getCarTargets()) {
+            if (target[0] >= 0 && target[0] < elevators.size()) {
+                dispatcher.addInternalRequest(target[1], target[0]);
+            }
+        }
+        for (int[] trip : recovery.getDestinations()) {
+            dispatcher.addDestinationRequest(trip[0], trip[1]);
+        }
+        if (recovery.size() > 0) {
+            log(LogLevel.WARN, String.format("Восстановлено из журнала вызовов: %d за %.2f мс",
+                    recovery.size(), (System.nanoTime() - started) / 1e6));
+        }
+    }
+    
+    // Журнал из -Delevator.journal=путь; без свойства или при ошибке система работает без журнала
+    private static void openJournal(ElevatorSystem system) {
+        String path = System.getProperty("elevator.journal");
+        if (path == null) return;
+        try {
+            system.setJournal(EventJournal.open(java.nio.file.Paths.get(path), system.getConfig().getFloors()));
+        } catch (java.io.IOException e) {
+            System.out.println("Журнал " + path + " недоступен: " + e.getMessage());
+        }
+    }
+    
+    // Шаг лифта в общем планировщике: следующий шаг ставится через задержку, которую вернул лифт,
+    // поэтому ожидание не занимает поток и число потоков не зависит от числа лифтов.
+    // Простаивающий лифт паркуется и не шагает, пока новый запрос (enqueue) его не разбудит
+    private void scheduleStep(Elevator elevator, long delay) {
+        if (!running) return;
+        try {
+            elevatorScheduler.schedule(() -> {
+                long next = elevator.step();
+                if (!elevator.tryPark()) {
+                    scheduleStep(elevator, next);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // планировщик уже остановлен
+        }
+    }
+    
+    // Запрос занятому лифту принимается сразу, а не на его следующем шаге (до MAX_DWELL_MS)
+    private void scheduleDrain(Elevator elevator) {
+        if (!running) return;
+        try {
+            elevatorScheduler.execute(elevator::drainRequests);
+        } catch (RejectedExecutionException e) {
+            // планировщик уже остановлен
+        }
+    }
+    
+    // Executors.newVirtualThreadPerTaskExecutor появился в Java 21, поэтому ищем его через reflection
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
     }
     
     public void stop() {
         System.out.println("\n=== Остановка системы ===");
     
         dispatcher.stop();
+        running = false;
         
-        for (Elevator elevator : elevators) {
-            elevator.interrupt();
+        if (elevatorExecutor != null) {
+            elevatorExecutor.shutdownNow();
+            awaitTermination(elevatorExecutor);
+        }
+        if (elevatorScheduler != null && elevatorScheduler != sharedScheduler) {
+            elevatorScheduler.shutdownNow();
+            awaitTermination(elevatorScheduler);
         }
         
-        for (Elevator elevator : elevators) {
+        for (Thread thread : elevatorThreads) {
+            thread.interrupt();
+        }
+        
+        for (Thread thread : elevatorThreads) {
             try {
-                elevator.join(2000); 
-                if (elevator.isAlive()) {
-                    System.out.println("Лифт " + elevator.getIdNum() + " не остановился корректно");
+                thread.join(2000); 
+                if (thread.isAlive()) {
+                    log(LogLevel.WARN, "Лифт " + thread.getName() + " не остановился корректно");
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
         }
         
+        for (Elevator elevator : elevators) {
+            log(LogLevel.INFO, String.format("%s: принято запросов %d, задержка принятия ср. %.1f мкс, макс. %.1f мкс",
+                    elevator.getName(), elevator.getAcceptedRequests(),
+                    elevator.getAverageAcceptLatencyMicros(), elevator.getMaxAcceptLatencyMicros()));
+        }
+        log(LogLevel.INFO, "Ожидание лифта: " + metrics.getWaitTimes().summary("мс"));
+        log(LogLevel.INFO, "Поездка: " + metrics.getJourneyTimes().summary("мс"));
+        log(LogLevel.INFO, "Вызовы: " + metrics.rejectionSummary() + ", политика " + dispatcher.getOverflowPolicy());
+        metrics.unregister();
+        if (journal != null) {
+            journal.close();
+        }
+        log(LogLevel.INFO, "Система остановлена");
+        logPipeline.stop();
+        
         if (gui != null) {
-            gui.addLog("Система остановлена");
             gui.stop();
         }
-        
-        System.out.println("Система остановлена");
+    }
+    
+    private void awaitTermination(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                log(LogLevel.WARN, "Лифты не остановились корректно");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
     
     public Dispatcher getDispatcher() {
@@ -78,10 +308,45 @@ public class ElevatorSystem {
         return elevators;
     }
     
+    public Clock getClock() {
+        return clock;
+    }
+    
+    // Симуляция в виртуальном времени: случайные вызовы, как в автогенерации GUI
+    private static void runSimulation(long hours, BuildingConfig config) {
+        SimulationEngine engine = new SimulationEngine();
+        ElevatorSystem system = new ElevatorSystem(config, engine);
+        system.getLogPipeline().setMinLevel(LogLevel.WARN);
+        system.getLogPipeline().start();
+        engine.attach(system);
+        
+        Random random = new Random(42);
+        long end = hours * 3600_000L;
+        long callTime = 0;
+        while (callTime < end) {
+            callTime += 2000 + random.nextInt(4000);
+            int floor = random.nextInt(config.getFloors()) + 1;
+            if (random.nextBoolean()) {
+                Direction dir = random.nextBoolean() ? Direction.UP : Direction.DOWN;
+                engine.scheduleAt(callTime, () -> system.getDispatcher().addExternalRequest(floor, dir));
+            } else {
+                int id = random.nextInt(config.getElevatorsCount());
+                engine.scheduleAt(callTime, () -> system.getDispatcher().addInternalRequest(floor, id));
+            }
+        }
+        
+        long started = System.nanoTime();
+        engine.runUntil(end);
+        long wallMs = (System.nanoTime() - started) / 1_000_000;
+        system.getLogPipeline().stop();
+        System.out.println("Симуляция: " + hours + " ч за " + wallMs + " мс, событий " + engine.getProcessedEvents());
+    }
+    
     public static void main(String[] args) throws InterruptedException {
         if (args.length > 0 && args[0].equals("nogui")) {
             // Консольный режим
             ElevatorSystem system = new ElevatorSystem(BuildingConfig.ELEVATORS_COUNT);
+            openJournal(system);
             system.start();
             
             Thread.sleep(2000);
@@ -97,10 +362,17 @@ public class ElevatorSystem {
             Thread.sleep(30000);
             
             system.stop();
+        } else if (args.length > 0 && args[0].equals("sim")) {
+            // Ускоренная симуляция: java ElevatorSystem sim [часы]
+            // sim [часов] [tower] - tower: 40 этажей со скай-лобби, по 2 лифта в группе
+            BuildingConfig config = args.length > 2 && args[2].equals("tower")
+                    ? BuildingConfig.skyLobbyTower("tower", 40, 2) : BuildingConfig.defaultBuilding();
+            runSimulation(args.length > 1 ? Long.parseLong(args[1]) : 1, config);
         } else {
             // GUI режим (по умолчанию)
             SwingUtilities.invokeLater(() -> {
                 ElevatorSystem system = new ElevatorSystem(BuildingConfig.ELEVATORS_COUNT);
+                openJournal(system);
                 ElevatorGUI gui = new ElevatorGUI(system);
                 system.setGUI(gui);
                 system.start();
@@ -0,0 +1,78 @@
+import javax.swing.table.AbstractTableModel;
+import java.util.*;
+
+// Модель таблицы лифтов поверх снимков состояния. refresh() вызывается в EDT: сравнивает версии
+// снимков с показанными и шлёт события только по изменившимся строкам (соседние - одним диапазоном),
+// а если ни один лифт не изменился, таблица не перерисовывается вовсе. Строка целей строится
+// один раз на версию снимка, а не при каждой отрисовке ячейки
+public class ElevatorTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    private static final String[] COLUMNS = {"ID", "Этаж", "Направление", "Статус", "Цели", "Загрузка"};
+
+    private final transient List<Elevator> elevators;
+    private final transient ElevatorSnapshot[] shown;
+    private final String[] targets;
+
+    public ElevatorTableModel(List<Elevator> elevators) {
+        this.elevators = new ArrayList<>(elevators);
+        this.shown = new ElevatorSnapshot[elevators.size()];
+        this.targets = new String[elevators.size()];
+        for (int i = 0; i < shown.length; i++) {
+            show(i, this.elevators.get(i).getSnapshot());
+        }
+    }
+
+    private void show(int row, ElevatorSnapshot snapshot) {
+        shown[row] = snapshot;
+        targets[row] = snapshot.getTargetsString();
+    }
+
+    // Возвращает число обновлённых строк
+    public int refresh() {
+        int changed = 0;
+        int rangeStart = -1;
+        for (int row = 0; row < shown.length; row++) {
+            ElevatorSnapshot snapshot = elevators.get(row).getSnapshot();
+            if (snapshot.getVersion() != shown[row].getVersion()) {
+                show(row, snapshot);
+                changed++;
+                if (rangeStart < 0) rangeStart = row;
+            } else if (rangeStart >= 0) {
+                fireTableRowsUpdated(rangeStart, row - 1);
+                rangeStart = -1;
+            }
+        }
+        if (rangeStart >= 0) {
+            fireTableRowsUpdated(rangeStart, shown.length - 1);
+        }
+        return changed;
+    }
+
+    @Override
+    public int getRowCount() {
+        return shown.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        ElevatorSnapshot snapshot = shown[row];
+        switch (column) {
+            case 0: return snapshot.getElevatorId();
+            case 1: return snapshot.getCurrentFloor();
+            case 2: return snapshot.getDirection();
+            case 3: return snapshot.getState();
+            case 4: return targets[row];
+            default: return snapshot.getPassengers() + "/" + snapshot.getCapacity();
+        }
+    }
+}
\ No newline at end of file
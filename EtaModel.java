@@ -0,0 +1,128 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Оценка времени до прибытия лифта на этаж по его маршруту: остаток текущей фазы дверей,
+// затем остановки по ходу движения и после разворота, FLOOR_TRAVEL_MS на этаж и цикл дверей
+// на каждой остановке в том порядке, в каком их проходит автомат Elevator. Стоянку на остановке
+// лифт считает по числу входящих и выходящих (Elevator.dwellFor); снимок знает только общее число
+// пассажиров в кабине и ожидающих, поэтому оно делится поровну между остановками - это оценка,
+// а не точное время. Проекция маршрута кэшируется на лифт и пересчитывается только при новой
+// версии его снимка
+public class EtaModel {
+    // Номинальный цикл остановки (LOADING_MS - стоянка для двоих) - единица штрафа за остановку в весах
+    // диспетчера. Пауза FLOOR_TRAVEL_MS после DOORS_CLOSING сюда не входит: это проезд первого этажа
+    // (лифт сдвигается на этаж в конце паузы), он учтён в FLOOR_TRAVEL_MS на этаж
+    public static final long DOOR_CYCLE_MS = Elevator.DOORS_OPENING_MS + Elevator.LOADING_MS + Elevator.DOORS_CLOSING_MS;
+
+    private final AtomicReferenceArray<Projection> cache;
+
+    public EtaModel(int cars) {
+        this.cache = new AtomicReferenceArray<>(cars);
+    }
+
+    // Миллисекунды до открытия дверей на этаже floor, если вызов в направлении direction назначить
+    // этому лифту. Попутным этаж считается, только если лифт проходит его в направлении вызова
+    // (или разворачивается на нём); иначе лифт заберёт пассажира после разворота
+    public long timeToFloor(ElevatorSnapshot snapshot, int floor, Direction direction) {
+        Projection projection = projection(snapshot);
+        int position = projection.startFloor;
+        long time = projection.startDelay;
+        for (int i = 0; i < projection.stops.length; i++) {
+            int stop = projection.stops[i];
+            if (floor >= Math.min(position, stop) && floor <= Math.max(position, stop)
+                    && passesInDirection(projection.stops, i, position, floor, direction)) {
+                // Этаж по пути к следующей остановке: лифт остановится на нём попутно
+                return time + Math.abs(floor - position) * Elevator.FLOOR_TRAVEL_MS;
+            }
+            time += Math.abs(stop - position) * Elevator.FLOOR_TRAVEL_MS + projection.stopCycle;
+            position = stop;
+        }
+        return time + Math.abs(floor - position) * Elevator.FLOOR_TRAVEL_MS;
+    }
+
+    // Подходит ли отрезок маршрута position -> stops[i] вызову с этажа floor: лифт идёт в направлении
+    // вызова, а на самой остановке - ещё и если дальше он поедет туда же или остановка последняя
+    private static boolean passesInDirection(int[] stops, int i, int position, int floor, Direction direction) {
+        if (direction != Direction.UP && direction != Direction.DOWN) return true;
+        int stop = stops[i];
+        if (travel(position, stop) == direction) return true;
+        if (floor != stop) return false;
+        return i + 1 == stops.length || travel(stop, stops[i + 1]) == direction;
+    }
+
+    private static Direction travel(int from, int to) {
+        return to > from ? Direction.UP : to < from ? Direction.DOWN : Direction.NONE;
+    }
+
+    private Projection projection(ElevatorSnapshot snapshot) {
+        int car = snapshot.getElevatorId();
+        if (car < 0 || car >= cache.length()) {
+            return new Projection(snapshot);
+        }
+        Projection cached = cache.get(car);
+        if (cached != null && cached.version == snapshot.getVersion()) {
+            return cached;
+        }
+        Projection projection = new Projection(snapshot);
+        cache.set(car, projection);
+        return projection;
+    }
+
+    // Остаток текущей фазы дверей: сколько в ней уже прошло, снимок не знает - считаем половину
+    private static long remainingDoorTime(ElevatorState state, long dwell) {
+        switch (state) {
+            case DOORS_OPENING:
+                return Elevator.DOORS_OPENING_MS / 2 + dwell + Elevator.DOORS_CLOSING_MS;
+            case LOADING:
+                return dwell / 2 + Elevator.DOORS_CLOSING_MS;
+            case DOORS_CLOSING:
+                return Elevator.DOORS_CLOSING_MS / 2;
+            default:
+                return 0;
+        }
+    }
+
+    // Порядок остановок лифта: как в Elevator.getNextTarget - по ходу движения, затем разворот
+    private static final class Projection {
+        private final long version;
+        private final int startFloor;
+        private final long startDelay;
+        private final int[] stops;
+        // Цикл дверей на одной остановке маршрута
+        private final long stopCycle;
+
+        Projection(ElevatorSnapshot snapshot) {
+            this.version = snapshot.getVersion();
+            this.startFloor = snapshot.getCurrentFloor();
+
+            int[] targets = snapshot.getTargets();
+            // Впереди каждый едущий выйдет, каждый ожидающий войдёт; на остановке хотя бы один человек
+            int stopsAhead = Math.max(1, targets.length);
+            int movers = snapshot.getPassengers() + snapshot.getWaitingPassengers();
+            long dwell = Elevator.dwellFor(Math.max(1, (movers + stopsAhead - 1) / stopsAhead));
+            this.stopCycle = Elevator.DOORS_OPENING_MS + dwell + Elevator.DOORS_CLOSING_MS;
+            this.startDelay = remainingDoorTime(snapshot.getState(), dwell);
+
+            int split = 0;
+            while (split < targets.length && targets[split] < startFloor) split++;
+            int exact = split < targets.length && targets[split] == startFloor ? 1 : 0;
+
+            Direction direction = snapshot.getDirection();
+            if (direction == Direction.NONE && targets.length > 0) {
+                // Стоящий лифт едет к ближайшей цели, при равенстве - вниз
+                int above = split < targets.length ? targets[split] - startFloor : Integer.MAX_VALUE;
+                int below = split > 0 ? startFloor - targets[split - 1] : Integer.MAX_VALUE;
+                direction = exact == 1 || below <= above ? Direction.DOWN : Direction.UP;
+            }
+
+            this.stops = new int[targets.length];
+            int n = 0;
+            if (direction == Direction.UP) {
+                for (int i = split; i < targets.length; i++) stops[n++] = targets[i];
+                for (int i = split - 1; i >= 0; i--) stops[n++] = targets[i];
+            } else {
+                for (int i = split + exact - 1; i >= 0; i--) stops[n++] = targets[i];
+                for (int i = split + exact; i < targets.length; i++) stops[n++] = targets[i];
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Журнал событий для восстановления после падения JVM: принятые вызовы и переходы состояния
+// дописываются записями фиксированной длины в файл, отображённый в память (запись - это store в
+// страницу, без системного вызова). Сброс на диск (force) - групповой, раз в FLUSH_INTERVAL_MS.
+// Рядом с файлом держится живое состояние (ожидающие вызовы и цели); когда файл заполняется,
+// он переписывается одним этим состоянием (компакция). Запуск: -Delevator.journal=путь
+public class EventJournal {
+    public static final int DEFAULT_SIZE = 4 * 1024 * 1024;
+    public static final long FLUSH_INTERVAL_MS = 20;
+
+    private static final int MAGIC = 0x454C564A;
+    private static final int HEADER_SIZE = 8;
+    // Запись: тип (1), направление (1), лифт (2), этаж (2), цель (2), время (8).
+    // Тип пишется последним: оборванная запись имеет тип 0 и считается концом журнала
+    private static final int RECORD_SIZE = 16;
+
+    private static final byte HALL_CALL = 1;
+    private static final byte HALL_CLEARED = 2;
+    private static final byte CAR_TARGET = 3;
+    private static final byte CAR_ARRIVED = 4;
+    private static final byte DESTINATION = 5;
+    private static final byte DESTINATION_BOARDED = 6;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final ReentrantLock lock;
+    private final int floors;
+    // Живое состояние: ожидающие вызовы с этажей (этаж*2 + вниз), цели из кабины и назначенные пассажиры по лифтам
+    private final boolean[] hallCalls;
+    private final Map<Integer, FloorSet> carTargets;
+    private final Map<Integer, List<int[]>> destinations;
+    private int position;
+    private boolean dirty;
+    private long compactions;
+    private ScheduledExecutorService flusher;
+    private ScheduledFuture<?> flushTask;
+
+    private EventJournal(FileChannel channel, MappedByteBuffer buffer, int floors) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.lock = new ReentrantLock();
+        this.floors = floors;
+        this.hallCalls = new boolean[(floors + 1) * 2];
+        this.carTargets = new HashMap<>();
+        this.destinations = new HashMap<>();
+    }
+
+    // Открытие (или создание) журнала; записи из прошлого запуска применяются к живому состоянию
+    public static EventJournal open(Path path, int floors) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int size = (int) Math.max(channel.size(), DEFAULT_SIZE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            EventJournal journal = new EventJournal(channel, buffer, floors);
+            journal.replay();
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void replay() {
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, 1);
+            position = HEADER_SIZE;
+            return;
+        }
+        position = HEADER_SIZE;
+        while (position + RECORD_SIZE <= buffer.capacity()) {
+            byte type = buffer.get(position);
+            if (type == 0) break;
+            apply(type, buffer.get(position + 1), buffer.getShort(position + 2),
+                    buffer.getShort(position + 4), buffer.getShort(position + 6));
+            position += RECORD_SIZE;
+        }
+    }
+
+    private void apply(byte type, int direction, int elevator, int floor, int target) {
+        if (floor < 1 || floor > floors) return;
+        switch (type) {
+            case HALL_CALL:
+                hallCalls[floor * 2 + direction] = true;
+                break;
+            case HALL_CLEARED:
+                hallCalls[floor * 2 + direction] = false;
+                break;
+            case CAR_TARGET:
+                carTargets.computeIfAbsent(elevator, id -> new FloorSet(floors)).add(floor);
+                break;
+            case CAR_ARRIVED:
+                FloorSet targets = carTargets.get(elevator);
+                if (targets != null) targets.remove(floor);
+                break;
+            case DESTINATION:
+                destinations.computeIfAbsent(elevator, id -> new ArrayList<>()).add(new int[]{floor, target});
+                break;
+            case DESTINATION_BOARDED:
+                List<int[]> waiting = destinations.get(elevator);
+                if (waiting != null) {
+                    for (Iterator<int[]> it = waiting.iterator(); it.hasNext(); ) {
+                        int[] trip = it.next();
+                        if (trip[0] == floor && trip[1] == target) {
+                            it.remove();
+                            break;
+                        }
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void hallCall(int floor, Direction direction, long time) {
+        append(HALL_CALL, direction, -1, floor, 0, time);
+    }
+
+    // Вызов обслужен или снят, так и не назначенный
+    public void hallCleared(int floor, Direction direction, int elevatorId, long time) {
+        append(HALL_CLEARED, direction, elevatorId, floor, 0, time);
+    }
+
+    public void carTarget(int elevatorId, int floor, long time) {
+        append(CAR_TARGET, Direction.NONE, elevatorId, floor, 0, time);
+    }
+
+    public void carArrived(int elevatorId, int floor, long time) {
+        append(CAR_ARRIVED, Direction.NONE, elevatorId, floor, 0, time);
+    }
+
+    // Поездка режима выбора этажа до конечного этажа (с пересадкой - не до этажа пересадки)
+    public void destination(int elevatorId, int sourceFloor, int targetFloor, long time) {
+        append(DESTINATION, Direction.NONE, elevatorId, sourceFloor, targetFloor, time);
+    }
+
+    public void destinationBoarded(int elevatorId, int sourceFloor, int targetFloor, long time) {
+        append(DESTINATION_BOARDED, Direction.NONE, elevatorId, sourceFloor, targetFloor, time);
+    }
+
+    private void append(byte type, Direction direction, int elevator, int floor, int target, long time) {
+        int dir = direction == Direction.DOWN ? 1 : 0;
+        lock.lock();
+        try {
+            // Компакция до применения события: иначе оно попало бы в журнал дважды
+            if (position + RECORD_SIZE > buffer.capacity()) {
+                compact();
+            }
+            apply(type, dir, elevator, floor, target);
+            write(position, type, dir, elevator, floor, target, time);
+            position += RECORD_SIZE;
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(int at, byte type, int direction, int elevator, int floor, int target, long time) {
+        buffer.put(at + 1, (byte) direction);
+        buffer.putShort(at + 2, (short) elevator);
+        buffer.putShort(at + 4, (short) floor);
+        buffer.putShort(at + 6, (short) target);
+        buffer.putLong(at + 8, time);
+        buffer.put(at, type);
+    }
+
+    // Журнал переписывается живым состоянием, хвост старых записей обнуляется; вызывается под lock.
+    // Компакция идёт на месте: падение посреди неё может вернуть уже снятые вызовы (лишняя остановка).
+    // Живому состоянию нужна не больше половины файла, иначе компакция шла бы на каждой записи -
+    // тогда файл сначала увеличивается
+    private void compact() {
+        long needed = HEADER_SIZE + (liveRecords() + 1L) * RECORD_SIZE;
+        if (needed * 2 > buffer.capacity()) {
+            grow(needed * 2);
+        }
+        int end = position;
+        position = HEADER_SIZE;
+        for (int slot = 0; slot < hallCalls.length; slot++) {
+            if (hallCalls[slot]) {
+                write(position, HALL_CALL, slot % 2, -1, slot / 2, 0, 0);
+                position += RECORD_SIZE;
+            }
+        }
+        for (Map.Entry<Integer, FloorSet> entry : carTargets.entrySet()) {
+            for (int floor : entry.getValue().toArray()) {
+                write(position, CAR_TARGET, 0, entry.getKey(), floor, 0, 0);
+                position += RECORD_SIZE;
+            }
+        }
+        for (Map.Entry<Integer, List<int[]>> entry : destinations.entrySet()) {
+            for (int[] trip : entry.getValue()) {
+                write(position, DESTINATION, 0, entry.getKey(), trip[0], trip[1], 0);
+                position += RECORD_SIZE;
+            }
+        }
+        for (int i = position; i < end; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        compactions++;
+    }
+
+    private long liveRecords() {
+        long count = 0;
+        for (boolean call : hallCalls) {
+            if (call) count++;
+        }
+        for (FloorSet targets : carTargets.values()) {
+            count += targets.size();
+        }
+        for (List<int[]> trips : destinations.values()) {
+            count += trips.size();
+        }
+        return count;
+    }
+
+    // Файл увеличивается и отображается заново; записанное уже лежит в нём. Вызывается под lock
+    // до изменения состояния: если файл увеличить нельзя, запись отклоняется, а журнал остаётся целым
+    private void grow(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Живое состояние журнала не помещается в " + Integer.MAX_VALUE + " байт");
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось увеличить журнал до " + size + " байт", e);
+        }
+    }
+
+    // Состояние прошлого запуска для повторной подачи вызовов; журнал при этом очищается,
+    // а повторно поданные вызовы записываются в него заново обычным путём
+    public Recovery takeRecovery() {
+        lock.lock();
+        try {
+            Recovery recovery = new Recovery();
+            for (int slot = 0; slot < hallCalls.length; slot++) {
+                if (hallCalls[slot]) {
+                    recovery.hallCalls.add(new int[]{slot / 2, slot % 2});
+                }
+            }
+            for (Map.Entry<Integer, FloorSet> entry : carTargets.entrySet()) {
+                for (int floor : entry.getValue().toArray()) {
+                    recovery.carTargets.add(new int[]{entry.getKey(), floor});
+                }
+            }
+            for (List<int[]> trips : destinations.values()) {
+                recovery.destinations.addAll(trips);
+            }
+            Arrays.fill(hallCalls, false);
+            carTargets.clear();
+            destinations.clear();
+            compact();
+            return recovery;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void start() {
+        if (flushTask != null) return;
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "EventJournal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        start(flusher);
+    }
+
+    // Групповой сброс на общем планировщике
+    public void start(ScheduledExecutorService executor) {
+        if (flushTask != null) return;
+        flushTask = executor.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Один force() на все записи, накопленные с прошлого сброса
+    public void flush() {
+        lock.lock();
+        try {
+            if (!dirty) return;
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+        buffer.force();
+    }
+
+    public void close() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // файл уже сброшен, закрытие канала на данные не влияет
+        }
+    }
+
+    public int getRecordCount() {
+        lock.lock();
+        try {
+            return (position - HEADER_SIZE) / RECORD_SIZE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompactions() {
+        lock.lock();
+        try {
+            return compactions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ожидающие вызовы прошлого запуска: {этаж, 0 - вверх / 1 - вниз}, {лифт, этаж}, {откуда, куда}
+    public static class Recovery {
+        private final List<int[]> hallCalls = new ArrayList<>();
+        private final List<int[]> carTargets = new ArrayList<>();
+        private final List<int[]> destinations = new ArrayList<>();
+
+        public List<int[]> getHallCalls() { return hallCalls; }
+        public List<int[]> getCarTargets() { return carTargets; }
+        public List<int[]> getDestinations() { return destinations; }
+
+        public int size() {
+            return hallCalls.size() + carTargets.size() + destinations.size();
+        }
+    }
+}
\ No newline at end of file
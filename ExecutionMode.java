@@ -0,0 +1,4 @@
+// Способ исполнения циклов лифтов: поток на лифт, виртуальный поток на лифт или общий планировщик
+public enum ExecutionMode {
+    THREADS, VIRTUAL_THREADS, SCHEDULER
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+// Набор этажей на битовой карте: бит N соответствует этажу N.
+// Поиск ближайшей цели выше/ниже и подсчёт целей в диапазоне - O(число слов), без упаковки и аллокаций
+public class FloorSet {
+    private static final int WORD_BITS = 64;
+
+    private long[] words;
+    private int size;
+
+    public FloorSet() {
+        this(BuildingConfig.FLOORS);
+    }
+
+    public FloorSet(int maxFloor) {
+        this.words = new long[wordIndex(maxFloor) + 1];
+    }
+
+    private FloorSet(long[] words, int size) {
+        this.words = words;
+        this.size = size;
+    }
+
+    private static int wordIndex(int floor) {
+        return floor >>> 6;
+    }
+
+    public boolean add(int floor) {
+        if (floor < 0) {
+            throw new IllegalArgumentException("Отрицательный этаж: " + floor);
+        }
+        int w = wordIndex(floor);
+        if (w >= words.length) {
+            words = Arrays.copyOf(words, Math.max(w + 1, words.length * 2));
+        }
+        long bit = 1L << floor;
+        if ((words[w] & bit) != 0) return false;
+        words[w] |= bit;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int floor) {
+        int w = wordIndex(floor);
+        if (floor < 0 || w >= words.length) return false;
+        long bit = 1L << floor;
+        if ((words[w] & bit) == 0) return false;
+        words[w] &= ~bit;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int floor) {
+        int w = wordIndex(floor);
+        return floor >= 0 && w < words.length && (words[w] & (1L << floor)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+        size = 0;
+    }
+
+    // Ближайший этаж >= floor или -1
+    public int nextAtOrAbove(int floor) {
+        if (floor < 0) floor = 0;
+        int w = wordIndex(floor);
+        if (w >= words.length) return -1;
+        long word = words[w] & (-1L << floor);
+        while (true) {
+            if (word != 0) {
+                return w * WORD_BITS + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) return -1;
+            word = words[w];
+        }
+    }
+
+    // Ближайший этаж <= floor или -1
+    public int nextAtOrBelow(int floor) {
+        if (floor < 0) return -1;
+        int w = wordIndex(floor);
+        if (w >= words.length) {
+            w = words.length - 1;
+            floor = WORD_BITS - 1;
+        }
+        long word = words[w] & (-1L >>> (WORD_BITS - 1 - (floor & (WORD_BITS - 1))));
+        while (true) {
+            if (word != 0) {
+                return w * WORD_BITS + WORD_BITS - 1 - Long.numberOfLeadingZeros(word);
+            }
+            if (w-- == 0) return -1;
+            word = words[w];
+        }
+    }
+
+    public int min() {
+        return nextAtOrAbove(0);
+    }
+
+    public int max() {
+        return nextAtOrBelow(words.length * WORD_BITS - 1);
+    }
+
+    public FloorSet copy() {
+        return new FloorSet(words.clone(), size);
+    }
+
+    public int[] toArray() {
+        int[] floors = new int[size];
+        int i = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            while (word != 0) {
+                floors[i++] = w * WORD_BITS + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return floors;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
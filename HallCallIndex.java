@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Индекс активных вызовов с этажей по ключу (этаж, направление).
+// Повторные нажатия той же кнопки объединяются с уже активным вызовом,
+// а вызов помнит лифт-владельца и снимается, когда этот лифт прибывает на этаж.
+// Время нажатия и назначения хранится в ячейке индекса, а не в объекте запроса
+public class HallCallIndex {
+    public static final int NO_CALL = -2;
+    public static final int UNASSIGNED = -1;
+
+    private final AtomicIntegerArray owners;
+    private final AtomicLongArray createdAt;
+    private final AtomicLongArray assignedAt;
+    private final AtomicInteger outstanding;
+
+    public HallCallIndex(int floors) {
+        this.owners = new AtomicIntegerArray((floors + 1) * 2);
+        this.createdAt = new AtomicLongArray(owners.length());
+        this.assignedAt = new AtomicLongArray(owners.length());
+        this.outstanding = new AtomicInteger();
+        for (int i = 0; i < owners.length(); i++) {
+            owners.set(i, NO_CALL);
+        }
+    }
+
+    private static int slot(int floor, Direction direction) {
+        return floor * 2 + (direction == Direction.DOWN ? 1 : 0);
+    }
+
+    // true - новый вызов, false - кнопка уже нажата и вызов ждёт обслуживания
+    public boolean register(int floor, Direction direction, long time) {
+        int slot = slot(floor, direction);
+        if (owners.compareAndSet(slot, NO_CALL, UNASSIGNED)) {
+            createdAt.set(slot, time);
+            assignedAt.set(slot, -1);
+            outstanding.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void assign(int floor, Direction direction, int elevatorId, long time) {
+        int slot = slot(floor, direction);
+        assignedAt.set(slot, time);
+        owners.set(slot, elevatorId);
+    }
+
+    // Переназначение другому лифту, только если владелец не сменился (вызов не обслужен за это время).
+    // Время назначения остаётся первым: метрика назначения - от нажатия до первого выбора лифта
+    public boolean reassign(int floor, Direction direction, int fromElevator, int toElevator) {
+        return owners.compareAndSet(slot(floor, direction), fromElevator, toElevator);
+    }
+
+    // Снятие вызова, который не удалось никому назначить, чтобы следующее нажатие создало новый
+    public void release(int floor, Direction direction) {
+        if (owners.getAndSet(slot(floor, direction), NO_CALL) != NO_CALL) {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    public int getOwner(int floor, Direction direction) {
+        return owners.get(slot(floor, direction));
+    }
+
+    // Время последнего назначения; читать до clearServed, после снятия ячейку может занять новый вызов
+    public long getAssignedAt(int floor, Direction direction) {
+        return assignedAt.get(slot(floor, direction));
+    }
+
+    // Прибытие лифта: вызов снимается, только если он назначен этому лифту.
+    // Возвращает время первого нажатия или -1, если снимать нечего
+    public long clearServed(int floor, Direction direction, int elevatorId) {
+        int slot = slot(floor, direction);
+        long time = createdAt.get(slot);
+        if (owners.compareAndSet(slot, elevatorId, NO_CALL)) {
+            outstanding.decrementAndGet();
+            return time;
+        }
+        return -1;
+    }
+
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+}
@@ -0,0 +1,4 @@
+// Уведомление об обслуженном вызове с этажа: время ожидания от первого нажатия до прибытия лифта
+public interface HallCallListener {
+    void onHallCallServed(int floor, Direction direction, int elevatorId, long waitMs);
+}
\ No newline at end of file
@@ -0,0 +1,3 @@
+public enum LogLevel {
+    DEBUG, INFO, WARN, ERROR
+}
\ No newline at end of file
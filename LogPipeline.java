@@ -0,0 +1,155 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Асинхронный конвейер логов: потоки лифтов и диспетчера только кладут запись в ограниченный буфер
+// (без блокировки, при переполнении запись отбрасывается и считается), а отдельный поток
+// раз в DRAIN_INTERVAL_MS выводит накопленное одной пачкой в консоль и в GUI
+public class LogPipeline {
+    public static final int BUFFER_CAPACITY = 8192;
+    public static final long DRAIN_INTERVAL_MS = 100;
+    private static final int MAX_BATCH = 1024;
+
+    private final Clock clock;
+    private final BlockingQueue<LogEntry> buffer;
+    private final AtomicLong dropped;
+    private final AtomicLong written;
+    private volatile LogLevel minLevel;
+    private volatile boolean consoleEnabled;
+    private volatile ElevatorGUI gui;
+    private ScheduledExecutorService drainer;
+    private ScheduledFuture<?> drainTask;
+
+    public LogPipeline(Clock clock) {
+        this.clock = clock;
+        this.buffer = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+        this.dropped = new AtomicLong();
+        this.written = new AtomicLong();
+        this.consoleEnabled = true;
+        this.minLevel = parseLevel(System.getProperty("elevator.log.level", "DEBUG"));
+    }
+
+    // Опечатка в -Delevator.log.level не роняет запуск: уровень DEBUG и предупреждение в этот же журнал
+    private LogLevel parseLevel(String value) {
+        try {
+            return LogLevel.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            buffer.offer(new LogEntry(clock.now(), LogLevel.WARN, "Неизвестный уровень журнала " + value + ", используется DEBUG"));
+            return LogLevel.DEBUG;
+        }
+    }
+
+    public void log(LogLevel level, String message) {
+        if (!isEnabled(level)) return;
+        if (!buffer.offer(new LogEntry(clock.now(), level, message))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // Проверка до сборки строки сообщения: на горячем пути отключённый уровень не создаёт мусора
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(minLevel) >= 0;
+    }
+
+    public void start() {
+        if (drainTask != null) return;
+        drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LogPipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        start(drainer);
+    }
+
+    // Вывод на общем планировщике (несколько зданий в одной JVM) без собственного потока
+    public void start(ScheduledExecutorService executor) {
+        if (drainTask != null) return;
+        drainTask = executor.scheduleWithFixedDelay(this::drain, DRAIN_INTERVAL_MS, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Остановка с выводом всего, что осталось в буфере
+    public void stop() {
+        if (drainTask != null) {
+            drainTask.cancel(false);
+            drainTask = null;
+        }
+        if (drainer != null) {
+            drainer.shutdown();
+            try {
+                drainer.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drainer = null;
+        }
+        while (!buffer.isEmpty()) {
+            drain();
+        }
+    }
+
+    // Вывод одной пачки: один print в консоль и один invokeLater в GUI
+    public void drain() {
+        List<LogEntry> batch = new ArrayList<>();
+        buffer.drainTo(batch, MAX_BATCH);
+        if (batch.isEmpty()) return;
+
+        ElevatorGUI currentGui = gui;
+        StringBuilder console = consoleEnabled ? new StringBuilder() : null;
+        List<String> guiLines = currentGui != null ? new ArrayList<>(batch.size()) : null;
+
+        for (LogEntry entry : batch) {
+            if (console != null) {
+                if (entry.level.compareTo(LogLevel.WARN) >= 0) {
+                    console.append(entry.level).append(' ');
+                }
+                console.append(entry.message).append('\n');
+            }
+            if (guiLines != null) {
+                guiLines.add(String.format("[%tT] %s", entry.time, entry.message));
+            }
+        }
+        if (console != null) {
+            System.out.print(console);
+        }
+        if (currentGui != null) {
+            currentGui.appendLogBatch(guiLines);
+        }
+        written.addAndGet(batch.size());
+    }
+
+    public void setGUI(ElevatorGUI gui) {
+        this.gui = gui;
+    }
+
+    public void setMinLevel(LogLevel minLevel) {
+        this.minLevel = minLevel;
+    }
+
+    public LogLevel getMinLevel() {
+        return minLevel;
+    }
+
+    public void setConsoleEnabled(boolean consoleEnabled) {
+        this.consoleEnabled = consoleEnabled;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    private static class LogEntry {
+        private final long time;
+        private final LogLevel level;
+        private final String message;
+
+        LogEntry(long time, LogLevel level, String message) {
+            this.time = time;
+            this.level = level;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Ограниченное кольцо упакованных запросов: много писателей, один читатель, без блокировок и аллокаций.
+// Ячейка - значение и метка (время постановки) в двух предвыделенных массивах; номер последовательности
+// ячейки (как в кольце Вьюкова) говорит, свободна она для писателя или уже заполнена для читателя.
+// Писатели занимают позицию CAS по хвосту, читатель идёт по голове без CAS. При заполнении offer
+// возвращает false - решение (повторить, отклонить) остаётся за вызывающим
+public class MpscLongRing {
+    // Получатель содержимого при разборе кольца
+    public interface Consumer {
+        void accept(long value, long stamp);
+    }
+
+    private final int mask;
+    private final long[] values;
+    private final long[] stamps;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    private final AtomicLong head;
+
+    // Ёмкость округляется вверх до степени двойки
+    public MpscLongRing(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.values = new long[size];
+        this.stamps = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    public boolean offer(long value, long stamp) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long lag = sequences.get(index) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    values[index] = value;
+                    stamps[index] = stamp;
+                    // Публикация ячейки: читатель увидит значение не раньше номера последовательности
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (lag < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // Разбор всего, что уже опубликовано (не больше ёмкости за вызов); только из потока-читателя.
+    // Возвращает число переданных получателю элементов
+    public int drain(Consumer consumer) {
+        long position = head.get();
+        int count = 0;
+        while (count <= mask) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) break;
+            long value = values[index];
+            long stamp = stamps[index];
+            sequences.set(index, position + mask + 1);
+            head.lazySet(++position);
+            count++;
+            consumer.accept(value, stamp);
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Приблизительный размер для метрик: писатели и читатель не останавливаются на время подсчёта
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+// Что делать с вызовом, когда очередь лифта заполнена (-Delevator.overflow):
+// COALESCE - слить с ожидающими вызовами того же этажа в битовой карте лифта (ничего не теряется, память не растёт),
+// REJECT - отклонить с причиной QUEUE_FULL,
+// SPILL - отдать вызов с этажа следующему лучшему лифту (цель из кабины перенести нельзя - отклоняется)
+public enum OverflowPolicy {
+    COALESCE, REJECT, SPILL
+}
\ No newline at end of file
@@ -0,0 +1,4 @@
+// Причины отклонения вызовов - для счётчиков диспетчера и метрик
+public enum RejectReason {
+    INVALID_FLOOR, INVALID_DIRECTION, FLOOR_NOT_SERVED, INVALID_ELEVATOR, NO_ELEVATOR, QUEUE_FULL
+}
\ No newline at end of file
@@ -1,9 +1,29 @@
 public class Request {
+    // Упаковка запроса в long для колец очередей (без объекта на вызов):
+    // тип (3 бита), направление (2), этаж (14), время создания по часам системы (45 бит, мс)
+    public static final int MAX_FLOOR = (1 << 14) - 1;
+    private static final int TIME_BITS = 45;
+    private static final int FLOOR_SHIFT = TIME_BITS;
+    private static final int DIRECTION_SHIFT = FLOOR_SHIFT + 14;
+    private static final int TYPE_SHIFT = DIRECTION_SHIFT + 2;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+    private static final RequestType[] TYPES = RequestType.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
     private final int sourceFloor;
     private final int targetFloor;
     private final Direction direction;
     private final RequestType type;
     private final int elevatorId;
+    // Жизненный цикл по часам системы (мс): создан, назначен лифту, лифт прибыл за пассажиром, цель достигнута
+    private volatile long createdAt = -1;
+    private volatile long assignedAt = -1;
+    private volatile long arrivedAt = -1;
+    private volatile long completedAt = -1;
+    // Поездка с пересадкой: этаж назначения после этажа пересадки (-1 - без пересадки)
+    // и начало всей поездки (для второго плеча - нажатие на исходном этаже)
+    private volatile int onwardFloor = -1;
+    private volatile long journeyStartedAt = -1;
     
     public Request(int sourceFloor, int targetFloor, Direction direction, RequestType type) {
         this.sourceFloor = sourceFloor;
@@ -14,10 +34,14 @@ public class Request {
     }
     
     public Request(int targetFloor, int elevatorId) {
+        this(targetFloor, elevatorId, RequestType.INTERNAL);
+    }
+    
+    public Request(int targetFloor, int elevatorId, RequestType type) {
         this.sourceFloor = -1;
         this.targetFloor = targetFloor;
         this.direction = Direction.NONE;
-        this.type = RequestType.INTERNAL;
+        this.type = type;
         this.elevatorId = elevatorId;
     }
     
@@ -26,4 +50,64 @@ public class Request {
     public Direction getDirection() { return direction; }
     public RequestType getType() { return type; }
     public int getElevatorId() { return elevatorId; }
+    public long getCreatedAt() { return createdAt; }
+    public long getAssignedAt() { return assignedAt; }
+    public long getArrivedAt() { return arrivedAt; }
+    public int getOnwardFloor() { return onwardFloor; }
+    public long getJourneyStartedAt() { return journeyStartedAt < 0 ? createdAt : journeyStartedAt; }
+    
+    public void markCreated(long time) {
+        this.createdAt = time;
+    }
+    
+    public void markAssigned(long time) {
+        this.assignedAt = time;
+    }
+    
+    public void markArrived(long time) {
+        this.arrivedAt = time;
+    }
+    
+    public void markCompleted(long time) {
+        this.completedAt = time;
+    }
+    
+    public void markTransfer(int onwardFloor) {
+        this.onwardFloor = onwardFloor;
+    }
+    
+    public void markJourneyStarted(long time) {
+        this.journeyStartedAt = time;
+    }
+    
+    // Ожидание: от нажатия кнопки до прибытия лифта
+    public long getWaitTime() {
+        return arrivedAt < 0 ? -1 : arrivedAt - createdAt;
+    }
+    
+    // Поездка целиком: от нажатия кнопки до прибытия на целевой этаж (с пересадкой - от первого нажатия)
+    public long getJourneyTime() {
+        return completedAt < 0 ? -1 : completedAt - getJourneyStartedAt();
+    }
+    
+    public static long pack(RequestType type, int floor, Direction direction, long createdAt) {
+        return (long) type.ordinal() << TYPE_SHIFT | (long) direction.ordinal() << DIRECTION_SHIFT
+                | (long) (floor & MAX_FLOOR) << FLOOR_SHIFT | Math.max(0, createdAt) & TIME_MASK;
+    }
+    
+    public static RequestType packedType(long packed) {
+        return TYPES[(int) (packed >>> TYPE_SHIFT)];
+    }
+    
+    public static Direction packedDirection(long packed) {
+        return DIRECTIONS[(int) (packed >>> DIRECTION_SHIFT) & 3];
+    }
+    
+    public static int packedFloor(long packed) {
+        return (int) (packed >>> FLOOR_SHIFT) & MAX_FLOOR;
+    }
+    
+    public static long packedCreatedAt(long packed) {
+        return packed & TIME_MASK;
+    }
 }
\ No newline at end of file
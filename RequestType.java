@@ -1,3 +1,3 @@
 public enum RequestType {
-    EXTERNAL, INTERNAL
+    EXTERNAL, INTERNAL, DESTINATION, PARK
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Подбор весов диспетчера по данным: тысячи симуляций здания с фиксированными зёрнами параллельно
+// на ForkJoinPool - сетка весов (DispatchWeights) x смеси трафика x прогоны. Каждый прогон - своё
+// здание на своём SimulationEngine в одном потоке, поэтому результат не зависит от числа потоков.
+// Для всех весов используются одни и те же зёрна, так что веса сравниваются на одинаковых пассажирах.
+// Отчёт - среднее и p95 ожидания и поездки по каждой конфигурации; лучшая по полному времени
+// пассажира (ожидание + поездка) отмечена *.
+// Запуск: java ScenarioRunner [прогонов на конфигурацию] [часов] [пассажиров в час на лифт] [этажей] [лифтов] [потоков]
+public class ScenarioRunner {
+    private static final int[] PASSENGER_COSTS = {0, 250, 500, 1000, 2000};
+    private static final int[] FULL_CAR_COSTS = {0, 15_000, 60_000};
+    private static final long CHUNK_MS = 60_000;
+    private static final long DRAIN_LIMIT_MS = 30 * 60_000L;
+
+    // Смесь трафика: доли поездок из лобби (этаж 1) и в лобби, остальные - между этажами
+    public enum TrafficMix {
+        UP_PEAK(0.85, 0.05), DOWN_PEAK(0.05, 0.85), LUNCH(0.40, 0.40), INTERFLOOR(0.10, 0.10);
+
+        private final double fromLobby;
+        private final double toLobby;
+
+        TrafficMix(double fromLobby, double toLobby) {
+            this.fromLobby = fromLobby;
+            this.toLobby = toLobby;
+        }
+
+        // {откуда, куда}
+        int[] nextTrip(Random random, int floors) {
+            double r = random.nextDouble();
+            int upper = 2 + random.nextInt(floors - 1);
+            if (r < fromLobby) return new int[]{1, upper};
+            if (r < fromLobby + toLobby || floors < 3) return new int[]{upper, 1};
+            int target;
+            do {
+                target = 2 + random.nextInt(floors - 1);
+            } while (target == upper);
+            return new int[]{upper, target};
+        }
+    }
+
+    // Сводка конфигурации (смесь, веса): гистограммы всех её прогонов
+    private static class Result {
+        private final TrafficMix mix;
+        private final DispatchWeights weights;
+        private final LatencyHistogram waits = new LatencyHistogram();
+        private final LatencyHistogram trips = new LatencyHistogram();
+
+        Result(TrafficMix mix, DispatchWeights weights) {
+            this.mix = mix;
+            this.weights = weights;
+        }
+    }
+
+    // Один прогон: пассажиры приходят пуассоновским потоком, нажимают вызов на этаже,
+    // а когда лифт прибыл - садятся и нажимают этаж назначения в кабине
+    static void simulate(BuildingConfig config, TrafficMix mix, DispatchWeights weights, long seed,
+                         long durationMs, int perCarHour, LatencyHistogram waits, LatencyHistogram trips) {
+        SimulationEngine engine = new SimulationEngine();
+        ElevatorSystem system = new ElevatorSystem(config, engine);
+        system.getLogPipeline().setMinLevel(LogLevel.ERROR);
+        Dispatcher dispatcher = system.getDispatcher();
+        dispatcher.setWeights(weights);
+
+        // Цели ожидающих пассажиров по вызову: этаж*2 + (вниз ? 1 : 0)
+        Map<Integer, List<Integer>> waiting = new HashMap<>();
+        dispatcher.setHallCallListener((floor, direction, elevatorId, waitMs) -> {
+            List<Integer> riders = waiting.remove(floor * 2 + (direction == Direction.DOWN ? 1 : 0));
+            if (riders == null) return;
+            for (int target : riders) {
+                engine.schedule(0, () -> dispatcher.addInternalRequest(target, elevatorId));
+            }
+        });
+        engine.attach(system);
+
+        Random random = new Random(seed);
+        double meanGapMs = 3_600_000.0 / ((double) perCarHour * config.getElevatorsCount());
+        long time = 0;
+        while (true) {
+            time += (long) (-Math.log(1 - random.nextDouble()) * meanGapMs);
+            if (time >= durationMs) break;
+            int[] trip = mix.nextTrip(random, config.getFloors());
+            Direction direction = trip[1] > trip[0] ? Direction.UP : Direction.DOWN;
+            int slot = trip[0] * 2 + (direction == Direction.DOWN ? 1 : 0);
+            engine.scheduleAt(time, () -> {
+                waiting.computeIfAbsent(slot, key -> new ArrayList<>()).add(trip[1]);
+                dispatcher.addExternalRequest(trip[0], direction);
+            });
+        }
+
+        engine.runUntil(durationMs);
+        // Поток пассажиров закончился - даём лифтам развезти всех, кто уже нажал кнопку
+        long drainEnd = engine.now() + DRAIN_LIMIT_MS;
+        while ((!waiting.isEmpty() || hasTargets(system)) && engine.now() < drainEnd) {
+            engine.runFor(CHUNK_MS);
+        }
+        waits.add(system.getMetrics().getWaitTimes());
+        trips.add(system.getMetrics().getJourneyTimes());
+    }
+
+    private static boolean hasTargets(ElevatorSystem system) {
+        for (Elevator elevator : system.getElevators()) {
+            if (elevator.getSnapshot().hasTargets()) return true;
+        }
+        return false;
+    }
+
+    private static List<DispatchWeights> weightGrid() {
+        DispatchWeights defaults = DispatchWeights.DEFAULT;
+        List<DispatchWeights> grid = new ArrayList<>();
+        for (int passengerCost : PASSENGER_COSTS) {
+            for (int fullCarCost : FULL_CAR_COSTS) {
+                grid.add(new DispatchWeights(passengerCost, fullCarCost,
+                        defaults.getDestinationStopCost(), defaults.getBatchExtraStopCost()));
+            }
+        }
+        return grid;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long hours = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int perCarHour = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int floors = args.length > 3 ? Integer.parseInt(args[3]) : BuildingConfig.FLOORS;
+        int cars = args.length > 4 ? Integer.parseInt(args[4]) : BuildingConfig.ELEVATORS_COUNT;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        BuildingConfig config = new BuildingConfig("scenario", floors, cars);
+        long durationMs = hours * 3_600_000L;
+
+        List<DispatchWeights> grid = weightGrid();
+        List<Result> results = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (TrafficMix mix : TrafficMix.values()) {
+            for (DispatchWeights weights : grid) {
+                Result result = new Result(mix, weights);
+                results.add(result);
+                for (int run = 0; run < runs; run++) {
+                    long seed = mix.ordinal() * 1_000_003L + run;
+                    tasks.add(() -> {
+                        simulate(config, mix, weights, seed, durationMs, perCarHour, result.waits, result.trips);
+                        return null;
+                    });
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long started = System.nanoTime();
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Прогон завершился с ошибкой", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        long wallMs = (System.nanoTime() - started) / 1_000_000;
+
+        System.out.printf("Прогонов: %d (%d весов x %d смесей x %d), здание: этажей %d, лифтов %d, %d ч, %d пасс./ч на лифт; потоков %d, за %d мс%n",
+                tasks.size(), grid.size(), TrafficMix.values().length, runs, floors, cars, hours, perCarHour, threads, wallMs);
+        printReport(results, grid);
+    }
+
+    private static void printReport(List<Result> results, List<DispatchWeights> grid) {
+        System.out.printf("%-12s %9s %7s %12s %8s %12s %8s %8s%n",
+                "смесь", "пассажир", "полный", "ожидание ср.", "p95", "поездка ср.", "p95", "итого");
+        double[] totalTime = new double[grid.size()];
+        for (TrafficMix mix : TrafficMix.values()) {
+            List<Result> rows = new ArrayList<>();
+            for (Result result : results) {
+                if (result.mix == mix) rows.add(result);
+            }
+            rows.sort(Comparator.comparingDouble(ScenarioRunner::passengerTime));
+            for (int i = 0; i < rows.size(); i++) {
+                Result row = rows.get(i);
+                totalTime[grid.indexOf(row.weights)] += passengerTime(row);
+                System.out.printf("%-12s %9d %7d %12.0f %8d %12.0f %8d %8.0f%n",
+                        mix + (i == 0 ? " *" : ""), row.weights.getPassengerCost(), row.weights.getFullCarCost(),
+                        row.waits.getMean(), row.waits.getPercentile(0.95),
+                        row.trips.getMean(), row.trips.getPercentile(0.95), passengerTime(row));
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < grid.size(); i++) {
+            if (totalTime[i] < totalTime[best]) best = i;
+        }
+        System.out.println("Лучшие веса по сумме полного времени всех смесей: " + grid.get(best));
+    }
+
+    private static double passengerTime(Result result) {
+        return result.waits.getMean() + result.trips.getMean();
+    }
+}
\ No newline at end of file
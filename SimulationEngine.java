@@ -0,0 +1,124 @@
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Дискретно-событийная симуляция: виртуальное время двигается от события к событию,
+// поэтому час трафика обрабатывается так быстро, как позволяет процессор
+public class SimulationEngine implements Clock {
+    private final PriorityQueue<Event> events;
+    private final List<Dispatcher> dispatchers;
+    private long now;
+    private long sequence;
+    private long processedEvents;
+    private double speed;
+
+    public SimulationEngine() {
+        this.events = new PriorityQueue<>();
+        this.dispatchers = new ArrayList<>();
+        this.now = 0;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    public void schedule(long delayMs, Runnable action) {
+        scheduleAt(now + delayMs, action);
+    }
+
+    public void scheduleAt(long time, Runnable action) {
+        events.add(new Event(Math.max(time, now), sequence++, action));
+    }
+
+    // Подключение системы: лифты шагают по своим задержкам, диспетчер разбирает вызовы после каждого события
+    public void attach(ElevatorSystem system) {
+        dispatchers.add(system.getDispatcher());
+        for (Elevator elevator : system.getElevators()) {
+            elevator.setWakeupHandler(() -> scheduleStep(elevator, 0));
+            scheduleStep(elevator, 0);
+        }
+        scheduleTick(system.getDispatcher());
+    }
+    
+    // Тик диспетчера - повторяющееся событие виртуального времени
+    private void scheduleTick(Dispatcher dispatcher) {
+        schedule(Dispatcher.TICK_MS, () -> {
+            dispatcher.tick();
+            scheduleTick(dispatcher);
+        });
+    }
+
+    // Простаивающий лифт паркуется и не создаёт событий, пока новый запрос (enqueue) его не разбудит
+    private void scheduleStep(Elevator elevator, long delay) {
+        schedule(delay, () -> {
+            long next = elevator.step();
+            if (!elevator.tryPark()) {
+                scheduleStep(elevator, next);
+            }
+        });
+    }
+
+    public void runFor(long durationMs) {
+        runUntil(now + durationMs);
+    }
+
+    // Скорость воспроизведения относительно реального времени; 0 - без ожидания, так быстро, как возможно
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public void runUntil(long endTime) {
+        long wallStart = System.nanoTime();
+        long virtualStart = now;
+        while (!events.isEmpty() && events.peek().time <= endTime) {
+            Event event = events.poll();
+            if (speed > 0) {
+                pace(wallStart, event.time - virtualStart);
+            }
+            now = event.time;
+            event.action.run();
+            for (Dispatcher dispatcher : dispatchers) {
+                dispatcher.dispatchPending();
+            }
+            processedEvents++;
+        }
+        now = Math.max(now, endTime);
+    }
+
+    private void pace(long wallStart, long virtualElapsedMs) {
+        long dueNanos = wallStart + (long) (virtualElapsedMs * 1_000_000L / speed);
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                speed = 0;
+            }
+        }
+    }
+
+    public long getProcessedEvents() {
+        return processedEvents;
+    }
+
+    private static class Event implements Comparable<Event> {
+        private final long time;
+        private final long seq;
+        private final Runnable action;
+
+        Event(long time, long seq, Runnable action) {
+            this.time = time;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+}
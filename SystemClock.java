@@ -0,0 +1,6 @@
+public class SystemClock implements Clock {
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+}
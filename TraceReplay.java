@@ -0,0 +1,191 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Воспроизведение трассы вызовов из JSONL в виртуальном времени, без GUI.
+// Формат строки: {"t": 1200, "type": "hall", "floor": 5, "direction": "UP"}
+//            или {"t": 1500, "type": "car", "elevator": 1, "floor": 10}
+//            или {"t": 1700, "type": "dest", "floor": 1, "target": 12} (режим выбора этажа)
+// t - миллисекунды (отсчёт от первой записи). Файл читается потоково по одной записи,
+// поэтому память не зависит от размера трассы. Строки другого формата пропускаются.
+// Запуск: java TraceReplay trace.jsonl [скорость, 0 - максимальная] [лифтов]
+public class TraceReplay {
+    private static final long CHUNK_MS = 60_000;
+    private static final long DRAIN_LIMIT_MS = 30 * 60_000L;
+
+    private final SimulationEngine engine;
+    private final ElevatorSystem system;
+    private final BufferedReader reader;
+    private final LatencyHistogram waits;
+    private long firstTimestamp = -1;
+    private long lastCallTime;
+    private long hallCalls;
+    private long carCalls;
+    private long destinationCalls;
+    private long skippedLines;
+    private boolean traceDone;
+
+    public TraceReplay(BufferedReader reader, int elevatorsCount, double speed) {
+        this.engine = new SimulationEngine();
+        this.engine.setSpeed(speed);
+        this.system = new ElevatorSystem(elevatorsCount, engine);
+        this.reader = reader;
+        this.waits = new LatencyHistogram();
+        system.getDispatcher().setHallCallListener((floor, direction, elevatorId, waitMs) -> waits.record(waitMs));
+        system.getLogPipeline().setMinLevel(LogLevel.WARN);
+        engine.attach(system);
+    }
+
+    public void run() {
+        system.getLogPipeline().start();
+        long started = System.nanoTime();
+
+        readNext();
+        while (!traceDone) {
+            engine.runFor(CHUNK_MS);
+        }
+        // Трасса закончилась - даём лифтам обслужить оставшиеся вызовы
+        long drainEnd = engine.now() + DRAIN_LIMIT_MS;
+        Dispatcher dispatcher = system.getDispatcher();
+        while (dispatcher.getOutstandingHallCalls() + dispatcher.getWaitingPassengers() > 0 && engine.now() < drainEnd) {
+            engine.runFor(CHUNK_MS);
+        }
+
+        long wallMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        system.getLogPipeline().stop();
+        printReport(wallMs);
+    }
+
+    // Следующая запись планируется только после исполнения текущей - в очереди событий одна запись трассы
+    private void readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (scheduleRecord(line)) return;
+                skippedLines++;
+            }
+        } catch (IOException e) {
+            system.log(LogLevel.ERROR, "Ошибка чтения трассы: " + e.getMessage());
+        }
+        traceDone = true;
+    }
+
+    private boolean scheduleRecord(String line) {
+        String type = field(line, "type");
+        String time = field(line, "t");
+        String floorText = field(line, "floor");
+        if (type == null || time == null || floorText == null) return false;
+
+        long timestamp;
+        int floor;
+        try {
+            timestamp = Long.parseLong(time);
+            floor = Integer.parseInt(floorText);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (firstTimestamp < 0) firstTimestamp = timestamp;
+        long at = timestamp - firstTimestamp;
+        Dispatcher dispatcher = system.getDispatcher();
+
+        if (type.equals("hall")) {
+            String directionText = field(line, "direction");
+            if (directionText == null) return false;
+            Direction direction;
+            try {
+                direction = Direction.valueOf(directionText.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            engine.scheduleAt(at, () -> {
+                hallCalls++;
+                lastCallTime = engine.now();
+                dispatcher.addExternalRequest(floor, direction);
+                readNext();
+            });
+            return true;
+        }
+        if (type.equals("car")) {
+            String elevatorText = field(line, "elevator");
+            if (elevatorText == null) return false;
+            int elevatorId;
+            try {
+                elevatorId = Integer.parseInt(elevatorText);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            engine.scheduleAt(at, () -> {
+                carCalls++;
+                lastCallTime = engine.now();
+                dispatcher.addInternalRequest(floor, elevatorId);
+                readNext();
+            });
+            return true;
+        }
+        if (type.equals("dest")) {
+            String targetText = field(line, "target");
+            if (targetText == null) return false;
+            int target;
+            try {
+                target = Integer.parseInt(targetText);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            engine.scheduleAt(at, () -> {
+                destinationCalls++;
+                lastCallTime = engine.now();
+                dispatcher.addDestinationRequest(floor, target);
+                readNext();
+            });
+            return true;
+        }
+        return false;
+    }
+
+    // Значение поля плоского JSON-объекта: число или строка без экранирования
+    static String field(String line, String key) {
+        String quoted = "\"" + key + "\"";
+        int keyPos = line.indexOf(quoted);
+        if (keyPos < 0) return null;
+        int pos = line.indexOf(':', keyPos + quoted.length());
+        if (pos < 0) return null;
+        pos++;
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+        if (pos >= line.length()) return null;
+
+        if (line.charAt(pos) == '"') {
+            int end = line.indexOf('"', pos + 1);
+            return end < 0 ? null : line.substring(pos + 1, end);
+        }
+        int end = pos;
+        while (end < line.length() && ",} \t".indexOf(line.charAt(end)) < 0) end++;
+        return end == pos ? null : line.substring(pos, end);
+    }
+
+    private void printReport(long wallMs) {
+        double simulatedHours = Math.max(engine.now(), 1) / 3_600_000.0;
+        System.out.println("=== Воспроизведение трассы ===");
+        System.out.printf("Записей: вызовов с этажей %d, из кабины %d, с выбором этажа %d, пропущено строк %d%n",
+                hallCalls, carCalls, destinationCalls, skippedLines);
+        System.out.printf("Виртуальное время: %.2f ч (последний вызов на %d с), реальное: %d мс, ускорение x%.0f%n",
+                simulatedHours, lastCallTime / 1000, wallMs, engine.now() / (double) wallMs);
+        System.out.printf("Обслужено вызовов с этажей: %d (%.1f в час), не обслужено: %d%n",
+                waits.getCount(), waits.getCount() / simulatedHours,
+                system.getDispatcher().getOutstandingHallCalls() + system.getDispatcher().getWaitingPassengers());
+        System.out.println("Ожидание: " + waits.summary("мс"));
+        System.out.println("Вызовы: " + system.getMetrics().rejectionSummary());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Использование: java TraceReplay trace.jsonl [скорость] [лифтов]");
+            return;
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        int elevators = args.length > 2 ? Integer.parseInt(args[2]) : BuildingConfig.ELEVATORS_COUNT;
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            new TraceReplay(reader, elevators, speed).run();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Статистика спроса по времени суток: счётчики вызовов по (интервал суток, этаж, направление).
+// По ней выбираются этажи, где простаивающим лифтам стоит ждать следующих вызовов:
+// утром - лобби, перед вечерним разъездом - верхние этажи. Раз в сутки счётчики
+// делятся пополам, так что старые дни весят меньше свежих
+public class TrafficPredictor {
+    public static final long SLOT_MS = 15 * 60_000L;
+    private static final long DAY_MS = 24 * 3600_000L;
+    private static final int SLOTS = (int) (DAY_MS / SLOT_MS);
+    // Меньше стольких вызовов в интервале - статистики ещё нет, парковать не по чему
+    private static final long MIN_SLOT_CALLS = 8;
+
+    private final int floors;
+    private final long dayOffsetMs;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray slotTotals;
+    private long agedDay = -1;
+
+    // dayOffsetMs - сдвиг часов системы относительно полуночи (часовой пояс для реального времени)
+    public TrafficPredictor(int floors, long dayOffsetMs) {
+        this.floors = floors;
+        this.dayOffsetMs = dayOffsetMs;
+        this.counts = new AtomicLongArray(SLOTS * (floors + 1) * 2);
+        this.slotTotals = new AtomicLongArray(SLOTS);
+    }
+
+    private int slotOf(long time) {
+        return (int) (Math.floorMod(time + dayOffsetMs, DAY_MS) / SLOT_MS);
+    }
+
+    private int index(int slot, int floor, Direction direction) {
+        return (slot * (floors + 1) + floor) * 2 + (direction == Direction.DOWN ? 1 : 0);
+    }
+
+    public void recordCall(int floor, Direction direction, long time) {
+        if (floor < 1 || floor > floors) return;
+        int slot = slotOf(time);
+        counts.incrementAndGet(index(slot, floor, direction));
+        slotTotals.incrementAndGet(slot);
+    }
+
+    // Ожидаемый спрос на этаже: текущий интервал и следующий, чтобы лифт успел доехать заранее
+    public long expectedDemand(int floor, long time) {
+        int slot = slotOf(time);
+        int next = (slot + 1) % SLOTS;
+        return counts.get(index(slot, floor, Direction.UP)) + counts.get(index(slot, floor, Direction.DOWN))
+                + counts.get(index(next, floor, Direction.UP)) + counts.get(index(next, floor, Direction.DOWN));
+    }
+
+    // До limit этажей по убыванию ожидаемого спроса; пусто, если данных по интервалу мало
+    public int[] rankFloors(long time, int limit) {
+        int slot = slotOf(time);
+        if (slotTotals.get(slot) + slotTotals.get((slot + 1) % SLOTS) < MIN_SLOT_CALLS || limit <= 0) {
+            return new int[0];
+        }
+        Integer[] order = new Integer[floors];
+        long[] demand = new long[floors + 1];
+        for (int floor = 1; floor <= floors; floor++) {
+            order[floor - 1] = floor;
+            demand[floor] = expectedDemand(floor, time);
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(demand[b], demand[a]));
+
+        int count = 0;
+        while (count < Math.min(limit, floors) && demand[order[count]] > 0) count++;
+        int[] ranked = new int[count];
+        for (int i = 0; i < count; i++) {
+            ranked[i] = order[i];
+        }
+        return ranked;
+    }
+
+    // Старение раз в сутки; вызывается из одного потока (тик диспетчера), но счётчики
+    // одновременно растут из recordCall - поэтому деление атомарное, без потери нажатий
+    public void age(long time) {
+        long day = Math.floorDiv(time + dayOffsetMs, DAY_MS);
+        if (agedDay < 0) {
+            agedDay = day;
+            return;
+        }
+        if (day == agedDay) return;
+        agedDay = day;
+        for (int i = 0; i < counts.length(); i++) {
+            counts.updateAndGet(i, v -> v / 2);
+        }
+        for (int i = 0; i < slotTotals.length(); i++) {
+            slotTotals.updateAndGet(i, v -> v / 2);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.util.*;
+
+// Бенчмарк выбора лифта диспетчером: пропускная способность и задержка findBestElevator
+// в зависимости от числа лифтов, этажей и размера набора целей.
+// Запуск из корня: javac -encoding UTF-8 -d out *.java bench/*.java; java -cp out DispatcherBenchmark [мс замера]
+public class DispatcherBenchmark {
+    private static final int[] ELEVATOR_COUNTS = {4, 16, 64, 256};
+    private static final int[] FLOOR_COUNTS = {20, 50, 100, 200};
+    private static final int[] TARGET_COUNTS = {0, 4, 16};
+    private static final int REQUEST_POOL = 1024;
+    private static final int LATENCY_SAMPLES = 1 << 20;
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        long measureMs = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        long warmupMs = measureMs / 2;
+        PrintStream console = System.out;
+
+        console.printf("%8s %7s %8s %14s %10s %10s %10s %10s%n",
+                "лифтов", "этажей", "целей", "ops/s", "p50 нс", "p99 нс", "p99.9 нс", "max нс");
+
+        for (int elevators : ELEVATOR_COUNTS) {
+            for (int floors : FLOOR_COUNTS) {
+                for (int targets : TARGET_COUNTS) {
+                    // Лифты пишут логи при движении - на время подготовки и замера глушим вывод
+                    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                    Result result;
+                    try {
+                        Fixture fixture = new Fixture(elevators, floors, targets, new Random(elevators * 31L + floors * 7L + targets));
+                        run(fixture, warmupMs, null);
+                        result = run(fixture, measureMs, new long[LATENCY_SAMPLES]);
+                    } finally {
+                        System.setOut(console);
+                    }
+                    console.printf("%8d %7d %8d %14.0f %10d %10d %10d %10d%n",
+                            elevators, floors, targets, result.opsPerSecond,
+                            result.p50, result.p99, result.p999, result.max);
+                }
+            }
+        }
+    }
+
+    private static Result run(Fixture fixture, long durationMs, long[] latencies) {
+        long deadline = System.nanoTime() + durationMs * 1_000_000L;
+        long ops = 0;
+        int samples = 0;
+        int checksum = 0;
+        long started = System.nanoTime();
+
+        while (System.nanoTime() < deadline) {
+            Request request = fixture.requests[(int) (ops & (REQUEST_POOL - 1))];
+            long opStart = System.nanoTime();
+            Elevator best = fixture.dispatcher.findBestElevator(request);
+            long opEnd = System.nanoTime();
+            checksum += best.getIdNum();
+            if (latencies != null && samples < latencies.length) {
+                latencies[samples++] = opEnd - opStart;
+            }
+            ops++;
+        }
+        long elapsed = System.nanoTime() - started;
+        sink = checksum;
+
+        if (latencies == null) {
+            return null;
+        }
+        Arrays.sort(latencies, 0, samples);
+        return new Result(ops * 1e9 / elapsed,
+                percentile(latencies, samples, 0.50),
+                percentile(latencies, samples, 0.99),
+                percentile(latencies, samples, 0.999),
+                samples > 0 ? latencies[samples - 1] : 0);
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        if (count == 0) return 0;
+        return sorted[Math.min(count - 1, (int) (count * p))];
+    }
+
+    // Парк лифтов на случайных этажах с заданным числом целей и пул случайных вызовов
+    private static class Fixture {
+        private final Dispatcher dispatcher;
+        private final Request[] requests;
+
+        Fixture(int elevatorsCount, int floors, int targets, Random random) {
+            List<Elevator> elevators = new ArrayList<>();
+            for (int i = 0; i < elevatorsCount; i++) {
+                Elevator elevator = new Elevator(i, random.nextInt(floors) + 1, null);
+                for (int t = 0; t < targets; t++) {
+                    elevator.addRequest(new Request(random.nextInt(floors) + 1, i));
+                }
+                // Каждый шаг забирает цель из очереди и сдвигает лифт на этаж
+                for (int t = 0; t < targets; t++) {
+                    elevator.step();
+                }
+                elevators.add(elevator);
+            }
+            this.dispatcher = new Dispatcher(elevators, new BuildingConfig("bench", floors, elevatorsCount));
+
+            this.requests = new Request[REQUEST_POOL];
+            for (int i = 0; i < REQUEST_POOL; i++) {
+                int floor = random.nextInt(floors) + 1;
+                Direction dir;
+                if (floor == 1) {
+                    dir = Direction.UP;
+                } else if (floor == floors) {
+                    dir = Direction.DOWN;
+                } else {
+                    dir = random.nextBoolean() ? Direction.UP : Direction.DOWN;
+                }
+                requests[i] = new Request(floor, -1, dir, RequestType.EXTERNAL);
+            }
+        }
+    }
+
+    private static class Result {
+        private final double opsPerSecond;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        Result(double opsPerSecond, long p50, long p99, long p999, long max) {
+            this.opsPerSecond = opsPerSecond;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+}